@@ -0,0 +1,102 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 缓存配置
+ * @author chenshanquan
+ * @date 2025/10/7
+ **/
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache")
+public class CacheProperties {
+
+    /**
+     * 启用本地缓存的key前缀及其配置
+     */
+    private List<Spec> local = new ArrayList<>();
+
+    /**
+     * 缓存值的编码器 binary | json，binary不支持的类型使用json
+     */
+    private String codec = "binary";
+
+    /**
+     * 编码后超过该字节数的缓存值压缩后存储
+     */
+    private int compressThreshold = 1024;
+
+    /**
+     * 逻辑过期缓存重建线程数，所有key共享
+     */
+    private int rebuildThreads = 4;
+
+    /**
+     * 重建任务队列长度，队列满时放弃本次重建，继续返回旧数据
+     */
+    private int rebuildQueueCapacity = 1000;
+
+    /**
+     * 重建锁的有效期（毫秒），重建完成后主动释放，应大于一次重建的最长耗时
+     */
+    private long rebuildLockMillis = 10000;
+
+    /**
+     * 逻辑过期的key在逻辑过期后保留的时间（毫秒），期间没有被访问的冷数据物理过期
+     */
+    private long coldRetainMillis = 600000;
+
+    /**
+     * 是否提前刷新热点key
+     */
+    private boolean refreshEnabled = true;
+
+    /**
+     * 扫描热点key的间隔（毫秒），访问次数每个间隔衰减一半
+     */
+    private long refreshIntervalMillis = 1000;
+
+    /**
+     * 逻辑过期前多久开始刷新（毫秒）
+     */
+    private long refreshAheadMillis = 5000;
+
+    /**
+     * 衰减后的访问次数不低于该值的key视为热点key
+     */
+    private long refreshHotThreshold = 10;
+
+    /**
+     * 最多跟踪的key数量
+     */
+    private long refreshMaxKeys = 100000;
+
+    /**
+     * 每批刷新的key数量，同一批一次查询数据库
+     */
+    private int refreshBatchSize = 200;
+
+    @Data
+    public static class Spec {
+        /**
+         * key前缀，多个前缀匹配时使用最长的前缀
+         */
+        private String prefix;
+
+        /**
+         * 最大条目数
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 写入后的过期时间（毫秒）
+         */
+        private long ttlMillis = 5000;
+    }
+}
@@ -4,6 +4,7 @@ import org.redisson.Redisson;
 import org.redisson.api.RBloomFilter;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -16,11 +17,22 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class RedissonConfig {
 
+	// 与spring.redis使用同一个Redis，便于按环境切换
+	@Value("${spring.redis.host:192.168.59.129}")
+	private String host;
+	@Value("${spring.redis.port:6379}")
+	private int port;
+	@Value("${spring.redis.password:#{null}}")
+	private String password;
+	@Value("${spring.redis.database:0}")
+	private int database;
+
 	@Bean
 	public RedissonClient redissonClient() {
 		Config config = new Config();
 		// 采用单个服务器模式
-		config.useSingleServer().setAddress("redis://192.168.59.129:6379").setPassword("root");
+		config.useSingleServer().setAddress("redis://" + host + ":" + port).setPassword(password)
+				.setDatabase(database);
 		return Redisson.create(config);
 	}
 
@@ -0,0 +1,292 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 秒杀下单相关配置
+ * @author chenshanquan
+ * @date 2025/9/20
+ **/
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.seckill")
+public class SeckillProperties {
+
+    /**
+     * 订单消息队列名称
+     */
+    private String streamName = "stream.orders";
+
+    /**
+     * 消费组名称
+     */
+    private String groupName = "g1";
+
+    /**
+     * 每个节点启动时的消费者线程数，运行中在最小和最大线程数之间自动调整
+     */
+    private int consumerThreads = 4;
+
+    /**
+     * 每个节点的最小消费者线程数
+     */
+    private int consumerMinThreads = 1;
+
+    /**
+     * 每个节点的最大消费者线程数
+     */
+    private int consumerMaxThreads = 16;
+
+    /**
+     * 消费者线程数的调整间隔（毫秒）
+     */
+    private long scaleIntervalMillis = 5000;
+
+    /**
+     * 未投递消息超过该数量且批次读满时增加消费者线程
+     */
+    private long scaleUpLag = 1000;
+
+    /**
+     * 未投递消息不超过该数量且批次很空时减少消费者线程，少量积压一个批次就能处理完，不要求完全没有积压
+     */
+    private long scaleDownLag = 50;
+
+    /**
+     * 批次平均落库耗时超过该值（毫秒）时不再增加消费者线程，瓶颈在数据库
+     */
+    private long scaleMaxCommitMillis = 200;
+
+    /**
+     * 每次从消息队列读取的最大条数
+     */
+    private int batchSize = 50;
+
+    /**
+     * 读取消息队列时的阻塞时间（毫秒）
+     */
+    private long blockMillis = 2000;
+
+    /**
+     * 组提交的最大订单数
+     */
+    private int writerBatchSize = 500;
+
+    /**
+     * 组提交的等待窗口（毫秒）
+     */
+    private long writerWindowMillis = 5;
+
+    /**
+     * 组提交写入器的分区数，订单按用户id路由到固定分区，同一用户的订单串行落库
+     */
+    private int writerPartitions = 4;
+
+    /**
+     * 等待组提交完成的最长时间（毫秒），超时的批次不确认，等待重试
+     */
+    private long writerTimeoutMillis = 10000;
+
+    /**
+     * 本地售罄标记的复查间隔（毫秒），超过后放行请求到Redis重新确认
+     */
+    private long soldOutRecheckMillis = 5000;
+
+    /**
+     * 是否启用本地准入许可，启用后每个节点从Redis租用许可，没有许可的请求直接拒绝
+     */
+    private boolean permitGateEnabled = true;
+
+    /**
+     * 创建秒杀券时全局许可数 = 库存 * 超发系数，超发部分覆盖重复下单、限流等被脚本拒绝的请求；补货和归还库存时许可按库存的变化量增加
+     */
+    private double permitOverbookFactor = 1.2;
+
+    /**
+     * 每次从Redis租用的许可数
+     */
+    private int permitLeaseSize = 100;
+
+    /**
+     * 全局许可耗尽或优惠券未启用许可时的复查间隔（毫秒）
+     */
+    private long permitRecheckMillis = 200;
+
+    /**
+     * 本地许可闲置超过该时间（毫秒）后归还到Redis，供其他节点租用
+     */
+    private long permitIdleMillis = 1000;
+
+    /**
+     * 每个节点最多跟踪的优惠券数，超过后淘汰最少使用的优惠券并归还它的本地许可
+     */
+    private long permitMaxVouchers = 10000;
+
+    /**
+     * 优惠券的本地许可和秒杀开始时间在不访问超过该时间（毫秒）后淘汰，之后重新读取
+     */
+    private long permitExpireMillis = 600000;
+
+    /**
+     * 排队室每一波放行的人数
+     */
+    private int roomWaveSize = 500;
+
+    /**
+     * 排队室放行的时间间隔（毫秒）
+     */
+    private long roomWaveIntervalMillis = 1000;
+
+    /**
+     * 未设置结束时间的优惠券，排队队列和已放行集合的过期时间（毫秒），从最后一次加入排队或放行开始计算
+     */
+    private long roomRetainMillis = 86400000;
+
+    /**
+     * 本地缓存优惠券是否启用排队室的时间（毫秒），优惠券重新配置后最多经过该时间生效
+     */
+    private long roomFlagCacheMillis = 10000;
+
+    /**
+     * 未支付订单的超时时间（毫秒），超时后取消订单并归还库存，0表示不取消
+     */
+    private long payTimeoutMillis = 15 * 60 * 1000L;
+
+    /**
+     * 超时时间轮每个槽的时长（毫秒）
+     */
+    private long timeoutTickMillis = 1000;
+
+    /**
+     * 超时时间轮每层的槽数
+     */
+    private int timeoutWheelSize = 60;
+
+    /**
+     * 每批取消的超时订单数
+     */
+    private int timeoutBatchSize = 500;
+
+    /**
+     * 扫描Redis中逾期未处理的超时订单的间隔（毫秒），用于接管宕机节点和重启前的订单
+     */
+    private long timeoutRecoverMillis = 10000;
+
+    /**
+     * 超时订单逾期超过该时间（毫秒）仍未处理时由扫描接管，也是节点租用超时订单的租约时长
+     */
+    private long timeoutGraceMillis = 30000;
+
+    /**
+     * 订单队列模式：stream 使用Redis stream，多节点部署；local 使用本地环形缓冲区和预写日志，单节点部署
+     */
+    private String queueMode = "stream";
+
+    /**
+     * local模式的预写日志目录
+     */
+    private String walDir = "data/wal";
+
+    /**
+     * local模式每个预写日志段文件的大小（字节）
+     */
+    private int walSegmentBytes = 64 * 1024 * 1024;
+
+    /**
+     * local模式每次写入后是否立即刷盘，关闭时进程崩溃不丢数据，机器掉电可能丢失最近写入的订单
+     */
+    private boolean walForceOnAppend = false;
+
+    /**
+     * local模式环形缓冲区的容量，必须是2的幂，缓冲区满时秒杀请求快速失败
+     */
+    private int ringBufferSize = 65536;
+
+    /**
+     * 使用bitmap记录购买用户的最大用户id，超出的用户id仍使用set记录，0表示不使用bitmap
+     * 默认1亿，单个优惠券的bitmap最大约12MB
+     */
+    private long dedupeBitmapMaxUserId = 100_000_000L;
+
+    /**
+     * 购买记录在秒杀结束后的保留时间（毫秒）
+     */
+    private long orderRetainMillis = 24 * 60 * 60 * 1000L;
+
+    /**
+     * 订单状态记录的保留时间（毫秒）
+     */
+    private long orderStatusTtlMillis = 24 * 60 * 60 * 1000L;
+
+    /**
+     * 订单消息队列监控间隔（毫秒）
+     */
+    private long monitorIntervalMillis = 1000;
+
+    /**
+     * 允许的最大积压消息数（pending + lag），超过后秒杀接口快速失败
+     */
+    private long maxBacklog = 50000;
+
+    /**
+     * stream裁剪策略：minid只裁剪已确认的消息，maxlen保留最近trimMaxLen条
+     */
+    private String trimStrategy = "minid";
+
+    /**
+     * maxlen裁剪策略保留的消息数，必须大于maxBacklog，否则会裁掉尚未处理的订单
+     */
+    private long trimMaxLen = 100000;
+
+    /**
+     * 检查pending-list的间隔（毫秒）
+     */
+    private long pendingCheckMillis = 5000;
+
+    /**
+     * 订单消息的最大重试次数，超过后转入死信队列；local模式下一批订单连续失败超过该次数后逐个落库，仍然失败的订单标记为失败
+     */
+    private int maxRetries = 5;
+
+    /**
+     * 重试的初始退避时间（毫秒），每次失败翻倍
+     */
+    private long retryBaseMillis = 1000;
+
+    /**
+     * 重试的最大退避时间（毫秒）
+     */
+    private long retryMaxMillis = 60000;
+
+    /**
+     * 死信队列名称
+     */
+    private String deadLetterStreamName = "stream.orders.dlq";
+
+    /**
+     * 节点标识，消费者名称为 节点标识-序号，需要在重启后保持不变；为空时使用 主机名:端口
+     */
+    private String instanceId;
+
+    /**
+     * 接管其他节点pending消息的检查间隔（毫秒）
+     */
+    private long claimIntervalMillis = 10000;
+
+    /**
+     * 其他消费者的消息空闲超过该时间（毫秒）后被接管
+     */
+    private long claimIdleMillis = 60000;
+
+    /**
+     * 每次最多接管的消息数
+     */
+    private int claimBatchSize = 100;
+
+    /**
+     * 没有pending消息的消费者不活跃超过该时间（毫秒）后从消费组删除
+     */
+    private long consumerExpireMillis = 3600000;
+}
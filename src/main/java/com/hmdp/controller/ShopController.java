@@ -41,6 +41,10 @@ public class ShopController {
     @GetMapping("/{id}")
     public Result queryShopById(@PathVariable("id") Long id) {
         log.info("查询店铺信息{}", id);
+        // 布隆过滤器拦截不存在的id，不查询缓存，也不写入空值
+        if (!shopService.mightExist(id)) {
+            return Result.fail("店铺不存在");
+        }
         Shop shop = shopService.queryShopById(id);
         if (shop == null) {
             return Result.fail("店铺不存在");
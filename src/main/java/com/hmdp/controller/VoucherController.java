@@ -4,12 +4,16 @@ import com.alibaba.fastjson.JSON;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.HmdpCacheEvict;
+import com.hmdp.utils.RedisConstants;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
@@ -35,6 +39,7 @@ public class VoucherController {
      * @return 优惠券id
      */
     @PostMapping
+    @HmdpCacheEvict(prefix = RedisConstants.CACHE_SHOP_VOUCHER_KEY, key = "#voucher.shopId")
     public Result addVoucher(@RequestBody Voucher voucher) {
         voucherService.save(voucher);
         return Result.ok(voucher.getId());
@@ -52,6 +57,39 @@ public class VoucherController {
         return Result.ok(voucher.getId());
     }
 
+    /**
+     * 秒杀券补货
+     * @param voucherId 优惠券id
+     * @param count 补货数量
+     * @return 无
+     */
+    @PutMapping("/seckill/stock/{id}")
+    public Result replenishSeckillStock(@PathVariable("id") Long voucherId, @RequestParam("count") Integer count) {
+        boolean success = voucherService.replenishSeckillStock(voucherId, count);
+        return success ? Result.ok() : Result.fail("补货失败");
+    }
+
+    /**
+     * 将秒杀券预热到Redis
+     * @param voucherId 优惠券id
+     * @return 无
+     */
+    @PostMapping("/seckill/{id}/preload")
+    public Result preloadSeckillVoucher(@PathVariable("id") Long voucherId) {
+        boolean success = voucherService.preloadSeckillVoucher(voucherId);
+        return success ? Result.ok() : Result.fail("优惠券不存在");
+    }
+
+    /**
+     * 将秒杀券的购买记录从set迁移到bitmap
+     * @param voucherId 优惠券id
+     * @return 迁移的用户数
+     */
+    @PostMapping("/seckill/{id}/order-bitmap")
+    public Result migrateSeckillOrderBitmap(@PathVariable("id") Long voucherId) {
+        return Result.ok(voucherService.migrateSeckillOrderBitmap(voucherId));
+    }
+
     /**
      * 查询店铺的优惠券列表
      * @param shopId 店铺id
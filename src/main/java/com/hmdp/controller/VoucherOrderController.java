@@ -3,9 +3,11 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
@@ -26,4 +28,44 @@ public class VoucherOrderController {
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return iVoucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 加入秒杀排队室，秒杀开始后按排队顺序分批获得抢购资格
+     * @param voucherId 优惠券id
+     * @return 排队票据：前面排队的人数、是否已获得抢购资格
+     */
+    @PostMapping("room/{id}")
+    public Result joinWaitingRoom(@PathVariable("id") Long voucherId) {
+        return iVoucherOrderService.joinWaitingRoom(voucherId);
+    }
+
+    /**
+     * 查询排队进度
+     * @param voucherId 优惠券id
+     * @return 排队票据
+     */
+    @GetMapping("room/{id}")
+    public Result queryWaitingRoom(@PathVariable("id") Long voucherId) {
+        return iVoucherOrderService.queryWaitingRoom(voucherId);
+    }
+
+    /**
+     * 将死信队列中的订单重新投递到订单消息队列
+     * @param count 重新投递的数量
+     * @return 实际重新投递的数量
+     */
+    @PostMapping("dlq/replay")
+    public Result replayDeadLetterOrders(@RequestParam(value = "count", defaultValue = "100") Integer count) {
+        return Result.ok(iVoucherOrderService.replayDeadLetterOrders(count));
+    }
+
+    /**
+     * 查询订单状态，只读取Redis，不访问数据库
+     * @param orderId 订单id
+     * @return 订单状态：QUEUED、PERSISTED、FAILED
+     */
+    @GetMapping("status/{id}")
+    public Result queryOrderStatus(@PathVariable("id") Long orderId) {
+        return iVoucherOrderService.queryOrderStatus(orderId);
+    }
 }
@@ -0,0 +1,20 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class OrderStatusDTO {
+    // 已抢购成功，等待异步落库
+    public static final String QUEUED = "QUEUED";
+    // 已落库
+    public static final String PERSISTED = "PERSISTED";
+    // 落库失败
+    public static final String FAILED = "FAILED";
+    // 超时未支付，已取消
+    public static final String CANCELLED = "CANCELLED";
+
+    private Long orderId;
+    private Long voucherId;
+    private String status;
+    private String reason;
+}
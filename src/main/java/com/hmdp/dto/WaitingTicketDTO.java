@@ -0,0 +1,12 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class WaitingTicketDTO {
+    private Long voucherId;
+    // 前面排队的人数，已放行时为0
+    private Long position;
+    // 是否已获得抢购资格
+    private Boolean admitted;
+}
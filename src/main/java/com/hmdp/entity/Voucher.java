@@ -78,6 +78,36 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private Integer stock;
 
+    /**
+     * 秒杀令牌桶：每秒放行的请求数，为空或0表示不限流
+     */
+    @TableField(exist = false)
+    private Double admitRate;
+
+    /**
+     * 秒杀令牌桶容量，为空时等于每秒放行的请求数
+     */
+    @TableField(exist = false)
+    private Integer admitBurst;
+
+    /**
+     * 单个用户的秒杀令牌桶：每秒放行的请求数，为空或0表示不限流
+     */
+    @TableField(exist = false)
+    private Double userAdmitRate;
+
+    /**
+     * 单个用户的秒杀令牌桶容量，为空时为1
+     */
+    @TableField(exist = false)
+    private Integer userAdmitBurst;
+
+    /**
+     * 是否启用排队室，启用后只有排队放行的用户可以抢购
+     */
+    @TableField(exist = false)
+    private Boolean waitingRoom;
+
     /**
      * 生效时间
      */
@@ -0,0 +1,373 @@
+package com.hmdp.mq;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * 单节点部署的本地订单队列
+ * 秒杀成功的订单先追加到内存映射的预写日志，再放入环形缓冲区，下单不经过网络；
+ * 一个消费线程按批取出订单落库，落库成功后推进检查点并删除已消费的日志段，
+ * 重启时从检查点开始重放日志中未确认的订单，重复订单由唯一索引拦截；
+ * 一批订单连续失败超过最大重试次数后逐个落库，仍然失败的订单标记为失败并归还Redis库存，避免阻塞后续订单
+ * @author chenshanquan
+ * @date 2025/10/5
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "hmdp.seckill", name = "queue-mode", havingValue = "local")
+public class LocalOrderQueue {
+
+    // 日志记录：魔数(4) + 订单id(8) + 用户id(8) + 优惠券id(8) + crc(4)
+    private static final int RECORD_BYTES = 32;
+    private static final int RECORD_MAGIC = 0x5EC10001;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    // 检查点把日志段序号和段内位置打包为一个long，一次写入，不会出现新日志段搭配旧位置
+    private static final int CHECKPOINT_POSITION_BITS = 32;
+    // 缓冲区为空时消费线程的等待时间
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final VoucherOrderBatchWriter voucherOrderBatchWriter;
+    private final OrderStatusTracker orderStatusTracker;
+    private final OrderTimeoutScheduler orderTimeoutScheduler;
+    private final IVoucherService voucherService;
+    private final SeckillProperties seckillProperties;
+
+    private File walDir;
+    private MappedByteBuffer checkpoint;
+    // 当前追加的日志段
+    private MappedByteBuffer segment;
+    private long segmentSeq;
+    private int segmentPosition;
+    private long deletedBefore;
+
+    private Entry[] ring;
+    private int mask;
+    // 下一个写入的序号，由offer的锁保护
+    private long nextSeq;
+    // 最后一个已写入和最后一个已落库的序号
+    private volatile long published = -1;
+    private volatile long consumed = -1;
+
+    // 重启时从日志中恢复的订单，消费线程优先处理
+    private List<Entry> recovered;
+    private ExecutorService consumerExecutor;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() throws IOException {
+        int size = seckillProperties.getRingBufferSize();
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalStateException("ring-buffer-size必须是2的幂: " + size);
+        }
+        ring = new Entry[size];
+        mask = size - 1;
+        walDir = new File(seckillProperties.getWalDir());
+        if (!walDir.exists() && !walDir.mkdirs()) {
+            throw new IOException("无法创建预写日志目录: " + walDir.getAbsolutePath());
+        }
+        checkpoint = map(new File(walDir, CHECKPOINT_FILE), 8);
+        recovered = recover();
+
+        consumerExecutor = Executors.newSingleThreadExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("local-order-").build());
+        consumerExecutor.submit(this::consumeLoop);
+        log.info("本地订单队列启动完成，日志目录: {}，待重放订单: {}", walDir.getAbsolutePath(), recovered.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        consumerExecutor.shutdownNow();
+    }
+
+    /**
+     * 写入订单：先追加预写日志再放入环形缓冲区
+     * @param voucherOrder 订单
+     * @return boolean 缓冲区已满或日志写入失败时返回false
+     * @author chenshanquan
+     * @date 2025/10/5
+     **/
+    public synchronized boolean offer(VoucherOrder voucherOrder) {
+        if (nextSeq - consumed > ring.length) {
+            return false;
+        }
+        try {
+            if (segmentPosition + RECORD_BYTES > segment.capacity()) {
+                openSegment(segmentSeq + 1, 0);
+            }
+        } catch (IOException e) {
+            log.error("预写日志分段失败，{}", e.getMessage());
+            return false;
+        }
+        writeRecord(segment, segmentPosition, voucherOrder);
+        if (seckillProperties.isWalForceOnAppend()) {
+            segment.force();
+        }
+        segmentPosition += RECORD_BYTES;
+        ring[(int) (nextSeq & mask)] = new Entry(voucherOrder, segmentSeq, segmentPosition);
+        published = nextSeq++;
+        return true;
+    }
+
+    private void consumeLoop() {
+        int batchSize = seckillProperties.getBatchSize();
+        long failures = 0;
+        while (running) {
+            List<Entry> batch;
+            long lastSeq = consumed;
+            if (!recovered.isEmpty()) {
+                batch = recovered.subList(0, Math.min(batchSize, recovered.size()));
+            } else {
+                long end = Math.min(published, consumed + batchSize);
+                if (end <= consumed) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                batch = new ArrayList<>((int) (end - consumed));
+                for (long seq = consumed + 1; seq <= end; seq++) {
+                    batch.add(ring[(int) (seq & mask)]);
+                }
+                lastSeq = end;
+            }
+            try {
+                if (failures >= seckillProperties.getMaxRetries()) {
+                    // 整批落库连续失败，逐个落库隔离无法落库的订单
+                    persistEach(batch);
+                } else {
+                    persist(batch);
+                }
+                failures = 0;
+            } catch (Exception e) {
+                log.error("本地队列订单落库异常，连续失败次数: {}，{}", failures + 1, e.getMessage());
+                failures++;
+                long delay = seckillProperties.getRetryBaseMillis() << Math.min(failures - 1, 20);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.min(delay, seckillProperties.getRetryMaxMillis())));
+                continue;
+            }
+            if (!recovered.isEmpty()) {
+                batch.clear();
+                continue;
+            }
+            for (long seq = consumed + 1; seq <= lastSeq; seq++) {
+                ring[(int) (seq & mask)] = null;
+            }
+            consumed = lastSeq;
+        }
+    }
+
+    /**
+     * 一批订单落库，成功后更新订单状态、登记支付超时并推进检查点
+     */
+    private void persist(List<Entry> batch) throws Exception {
+        List<VoucherOrder> voucherOrders = batch.stream().map(entry -> entry.voucherOrder)
+                .collect(Collectors.toList());
+        Set<Long> persistedIds = voucherOrderBatchWriter.write(voucherOrders);
+        orderStatusTracker.acknowledge(voucherOrders, persistedIds, Collections.emptyList());
+        orderTimeoutScheduler.schedule(voucherOrders.stream()
+                .filter(voucherOrder -> persistedIds.contains(voucherOrder.getId()))
+                .collect(Collectors.toList()));
+        advance(batch.get(batch.size() - 1));
+    }
+
+    /**
+     * 逐个落库，无法落库的订单标记为失败并归还Redis库存和购买记录，记录订单信息等待人工核对
+     * 订单已落库但更新状态失败时只记录日志，不归还库存；等待落库超时的订单可能仍会落库，不能归还库存，退避后重试这个订单
+     */
+    private void persistEach(List<Entry> batch) {
+        for (Entry entry : batch) {
+            VoucherOrder voucherOrder = entry.voucherOrder;
+            List<VoucherOrder> single = Collections.singletonList(voucherOrder);
+            Set<Long> persistedIds = null;
+            try {
+                while (persistedIds == null && running) {
+                    try {
+                        persistedIds = voucherOrderBatchWriter.write(single);
+                    } catch (TimeoutException e) {
+                        log.warn("订单落库超时，退避后重试，订单ID: {}", voucherOrder.getId());
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(seckillProperties.getRetryMaxMillis()));
+                    }
+                }
+                if (persistedIds == null) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                // 停止时被中断，订单留在日志中，重启后重放
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("订单超过重试次数仍无法落库，标记为失败，订单ID: {}，用户ID: {}，优惠券ID: {}，{}",
+                        voucherOrder.getId(), voucherOrder.getUserId(), voucherOrder.getVoucherId(), e.getMessage());
+                orderStatusTracker.markFailed(voucherOrder.getId(), "订单落库失败");
+                voucherService.releaseSeckillStock(voucherOrder.getVoucherId(),
+                        Collections.singletonList(voucherOrder.getUserId()));
+                advance(entry);
+                continue;
+            }
+            try {
+                orderStatusTracker.acknowledge(single, persistedIds, Collections.emptyList());
+                if (persistedIds.contains(voucherOrder.getId())) {
+                    orderTimeoutScheduler.schedule(single);
+                }
+            } catch (Exception e) {
+                log.error("订单已落库但更新状态失败，订单ID: {}，{}", voucherOrder.getId(), e.getMessage());
+            }
+            advance(entry);
+        }
+    }
+
+    /**
+     * 推进检查点到指定记录之后，并删除之前的日志段
+     */
+    private void advance(Entry entry) {
+        checkpoint.putLong(0, entry.segmentSeq << CHECKPOINT_POSITION_BITS | entry.position);
+        if (seckillProperties.isWalForceOnAppend()) {
+            checkpoint.force();
+        }
+        deleteSegmentsBefore(entry.segmentSeq);
+    }
+
+    /**
+     * 从检查点开始读取所有日志段，恢复未落库的订单，并定位到最后一个日志段的末尾继续追加
+     */
+    private List<Entry> recover() throws IOException {
+        long packed = checkpoint.getLong(0);
+        long checkpointSeq = packed >>> CHECKPOINT_POSITION_BITS;
+        int checkpointPosition = (int) packed;
+        TreeMap<Long, File> segments = listSegments();
+        List<Entry> entries = new ArrayList<>();
+        long lastSeq = checkpointSeq;
+        int lastPosition = checkpointPosition;
+        for (Long seq : segments.tailMap(checkpointSeq, true).keySet()) {
+            MappedByteBuffer buffer = map(segments.get(seq), seckillProperties.getWalSegmentBytes());
+            int position = seq == checkpointSeq ? checkpointPosition : 0;
+            while (position + RECORD_BYTES <= buffer.capacity()) {
+                VoucherOrder voucherOrder = readRecord(buffer, position);
+                if (voucherOrder == null) {
+                    break;
+                }
+                position += RECORD_BYTES;
+                entries.add(new Entry(voucherOrder, seq, position));
+            }
+            lastSeq = seq;
+            lastPosition = position;
+        }
+        deletedBefore = segments.isEmpty() ? 0 : segments.firstKey();
+        openSegment(lastSeq, lastPosition);
+        deleteSegmentsBefore(checkpointSeq);
+        return entries;
+    }
+
+    private void openSegment(long seq, int position) throws IOException {
+        segment = map(new File(walDir, SEGMENT_PREFIX + seq + SEGMENT_SUFFIX), seckillProperties.getWalSegmentBytes());
+        segmentSeq = seq;
+        segmentPosition = position;
+    }
+
+    private void deleteSegmentsBefore(long seq) {
+        for (; deletedBefore < seq; deletedBefore++) {
+            File file = new File(walDir, SEGMENT_PREFIX + deletedBefore + SEGMENT_SUFFIX);
+            if (file.exists() && !file.delete()) {
+                log.warn("删除预写日志段失败: {}", file.getName());
+            }
+        }
+    }
+
+    private TreeMap<Long, File> listSegments() {
+        TreeMap<Long, File> segments = new TreeMap<>();
+        File[] files = walDir.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())), file);
+            }
+        }
+        return segments;
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            // 映射在通道关闭后仍然有效
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static void writeRecord(MappedByteBuffer buffer, int position, VoucherOrder voucherOrder) {
+        long orderId = voucherOrder.getId();
+        long userId = voucherOrder.getUserId();
+        long voucherId = voucherOrder.getVoucherId();
+        buffer.putLong(position + 4, orderId);
+        buffer.putLong(position + 12, userId);
+        buffer.putLong(position + 20, voucherId);
+        buffer.putInt(position + 28, crc(orderId, userId, voucherId));
+        // 魔数最后写入，恢复时魔数有效且crc一致才认为记录完整
+        buffer.putInt(position, RECORD_MAGIC);
+    }
+
+    private static VoucherOrder readRecord(MappedByteBuffer buffer, int position) {
+        if (buffer.getInt(position) != RECORD_MAGIC) {
+            return null;
+        }
+        long orderId = buffer.getLong(position + 4);
+        long userId = buffer.getLong(position + 12);
+        long voucherId = buffer.getLong(position + 20);
+        if (buffer.getInt(position + 28) != crc(orderId, userId, voucherId)) {
+            return null;
+        }
+        VoucherOrder voucherOrder = new VoucherOrder();
+        voucherOrder.setId(orderId).setUserId(userId).setVoucherId(voucherId);
+        return voucherOrder;
+    }
+
+    private static int crc(long orderId, long userId, long voucherId) {
+        CRC32 crc32 = new CRC32();
+        for (long value : new long[]{orderId, userId, voucherId}) {
+            for (int i = 0; i < 8; i++) {
+                crc32.update((int) (value >>> (i * 8)));
+            }
+        }
+        return (int) crc32.getValue();
+    }
+
+    private static class Entry {
+        private final VoucherOrder voucherOrder;
+        // 记录所在的日志段和记录之后的位置，落库后作为检查点
+        private final long segmentSeq;
+        private final int position;
+
+        Entry(VoucherOrder voucherOrder, long segmentSeq, int position) {
+            this.voucherOrder = voucherOrder;
+            this.segmentSeq = segmentSeq;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.hmdp.mq;
+
+import com.hmdp.config.SeckillProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单死信队列
+ * 超过重试次数的订单消息转入死信stream，人工处理后可重新投递到订单消息队列
+ * @author chenshanquan
+ * @date 2025/9/27
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderDeadLetterQueue {
+
+    // 死信消息中记录原消息id和投递次数的字段
+    private static final String ORIGINAL_ID_FIELD = "originalId";
+    private static final String DELIVERIES_FIELD = "deliveries";
+    // 订单消息中的订单id字段
+    private static final String ORDER_ID_FIELD = "id";
+
+    private static final DefaultRedisScript<String> REPLAY_SCRIPT;
+
+    static {
+        REPLAY_SCRIPT = new DefaultRedisScript<>();
+        REPLAY_SCRIPT.setLocation(new ClassPathResource("dlq_replay.lua"));
+        REPLAY_SCRIPT.setResultType(String.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillProperties seckillProperties;
+    private final OrderStatusTracker orderStatusTracker;
+
+    /**
+     * 将消息转入死信队列并确认原消息
+     * @param record 原消息
+     * @param deliveries 已投递次数
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/27
+     **/
+    public void deadLetter(MapRecord<String, Object, Object> record, long deliveries) {
+        Map<String, String> fields = new HashMap<>();
+        record.getValue().forEach((k, v) -> fields.put(k.toString(), v.toString()));
+        fields.put(ORIGINAL_ID_FIELD, record.getId().getValue());
+        fields.put(DELIVERIES_FIELD, String.valueOf(deliveries));
+        StreamOperations<String, Object, Object> opsForStream = stringRedisTemplate.opsForStream();
+        opsForStream.add(StreamRecords.mapBacked(fields).withStreamKey(seckillProperties.getDeadLetterStreamName()));
+        opsForStream.acknowledge(seckillProperties.getStreamName(), seckillProperties.getGroupName(), record.getId());
+        markStatus(fields.get(ORDER_ID_FIELD), false);
+        log.error("订单消息超过重试次数，转入死信队列，消息ID: {}，投递次数: {}", record.getId(), deliveries);
+    }
+
+    /**
+     * 消息已被裁剪，内容无法读取，只确认原消息并记录消息id，等待人工核对
+     * @param recordId 原消息id
+     * @param deliveries 已投递次数
+     * @param consumerName 持有消息的消费者
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/27
+     **/
+    public void deadLetterTrimmed(RecordId recordId, long deliveries, String consumerName) {
+        stringRedisTemplate.opsForStream().acknowledge(seckillProperties.getStreamName(),
+                seckillProperties.getGroupName(), recordId);
+        log.error("订单消息超过重试次数且已被裁剪，无法转入死信队列，消息ID: {}，投递次数: {}，消费者: {}", recordId,
+                deliveries, consumerName);
+    }
+
+    /**
+     * 将死信队列中最早的count条消息重新投递到订单消息队列
+     * 每条消息通过脚本原子地从死信队列删除并写入订单消息队列，失败时不会丢失或重复；多个请求同时重新投递时只有一个生效
+     * @param count 重新投递的数量
+     * @return int 实际重新投递的数量
+     * @author chenshanquan
+     * @date 2025/9/27
+     **/
+    public int replay(int count) {
+        StreamOperations<String, Object, Object> opsForStream = stringRedisTemplate.opsForStream();
+        String deadLetterStream = seckillProperties.getDeadLetterStreamName();
+        List<MapRecord<String, Object, Object>> records = opsForStream.range(deadLetterStream, Range.unbounded(),
+                Limit.limit().count(count));
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        List<String> keys = Arrays.asList(deadLetterStream, seckillProperties.getStreamName());
+        int replayed = 0;
+        for (MapRecord<String, Object, Object> record : records) {
+            List<String> args = new ArrayList<>();
+            args.add(record.getId().getValue());
+            String orderId = null;
+            for (Map.Entry<Object, Object> entry : record.getValue().entrySet()) {
+                String field = entry.getKey().toString();
+                if (ORIGINAL_ID_FIELD.equals(field) || DELIVERIES_FIELD.equals(field)) {
+                    continue;
+                }
+                if (ORDER_ID_FIELD.equals(field)) {
+                    orderId = entry.getValue().toString();
+                }
+                args.add(field);
+                args.add(entry.getValue().toString());
+            }
+            if (stringRedisTemplate.execute(REPLAY_SCRIPT, keys, args.toArray()) == null) {
+                continue;
+            }
+            markStatus(orderId, true);
+            replayed++;
+        }
+        log.info("死信队列重新投递完成，数量: {}", replayed);
+        return replayed;
+    }
+
+    private void markStatus(String orderId, boolean queued) {
+        if (orderId == null) {
+            return;
+        }
+        if (queued) {
+            orderStatusTracker.markQueued(Long.valueOf(orderId));
+        } else {
+            orderStatusTracker.markFailed(Long.valueOf(orderId), "下单失败，等待人工处理");
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.hmdp.mq;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.dto.OrderStatusDTO;
+import com.hmdp.entity.VoucherOrder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STATUS_KEY;
+
+/**
+ * 订单状态记录
+ * 秒杀脚本写入QUEUED，消费者落库后与XACK在同一个pipeline中更新为PERSISTED或FAILED，
+ * 客户端轮询订单状态只访问Redis
+ * @author chenshanquan
+ * @date 2025/9/30
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderStatusTracker {
+
+    private static final String STATUS_FIELD = "status";
+    private static final String REASON_FIELD = "reason";
+    private static final String VOUCHER_ID_FIELD = "voucherId";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillProperties seckillProperties;
+
+    /**
+     * 更新一批订单的状态并确认消息，一次往返完成
+     * @param voucherOrders 订单列表
+     * @param persistedIds 实际落库的订单id，其余订单视为重复下单
+     * @param recordIds 消息id，local模式下为空
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/30
+     **/
+    public void acknowledge(List<VoucherOrder> voucherOrders, Set<Long> persistedIds, List<RecordId> recordIds) {
+        long ttl = seckillProperties.getOrderStatusTtlMillis();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (VoucherOrder voucherOrder : voucherOrders) {
+                String key = SECKILL_ORDER_STATUS_KEY + voucherOrder.getId();
+                if (persistedIds.contains(voucherOrder.getId())) {
+                    conn.hMSet(key, status(OrderStatusDTO.PERSISTED, null));
+                } else {
+                    conn.hMSet(key, status(OrderStatusDTO.FAILED, "重复下单"));
+                }
+                conn.pExpire(key, ttl);
+            }
+            if (!recordIds.isEmpty()) {
+                conn.xAck(seckillProperties.getStreamName(), seckillProperties.getGroupName(),
+                        recordIds.toArray(new RecordId[0]));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 标记订单失败
+     * @param orderId 订单id
+     * @param reason 失败原因
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/30
+     **/
+    public void markFailed(Long orderId, String reason) {
+        update(orderId, status(OrderStatusDTO.FAILED, reason));
+    }
+
+    /**
+     * 标记订单已取消
+     * @param orderId 订单id
+     * @param reason 取消原因
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/4
+     **/
+    public void markCancelled(Long orderId, String reason) {
+        update(orderId, status(OrderStatusDTO.CANCELLED, reason));
+    }
+
+    /**
+     * 重新标记为排队中，用于死信订单重新投递
+     * @param orderId 订单id
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/30
+     **/
+    public void markQueued(Long orderId) {
+        update(orderId, status(OrderStatusDTO.QUEUED, null));
+    }
+
+    /**
+     * 查询订单状态
+     * @param orderId 订单id
+     * @return com.hmdp.dto.OrderStatusDTO 状态记录不存在或已过期时返回null
+     * @author chenshanquan
+     * @date 2025/9/30
+     **/
+    public OrderStatusDTO get(Long orderId) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(SECKILL_ORDER_STATUS_KEY + orderId);
+        if (entries.isEmpty()) {
+            return null;
+        }
+        OrderStatusDTO orderStatus = new OrderStatusDTO();
+        orderStatus.setOrderId(orderId);
+        orderStatus.setStatus((String) entries.get(STATUS_FIELD));
+        String reason = (String) entries.get(REASON_FIELD);
+        orderStatus.setReason(StrUtil.isEmpty(reason) ? null : reason);
+        Object voucherId = entries.get(VOUCHER_ID_FIELD);
+        orderStatus.setVoucherId(voucherId == null ? null : Long.valueOf(voucherId.toString()));
+        return orderStatus;
+    }
+
+    private void update(Long orderId, Map<String, String> status) {
+        String key = SECKILL_ORDER_STATUS_KEY + orderId;
+        stringRedisTemplate.opsForHash().putAll(key, status);
+        stringRedisTemplate.expire(key, Duration.ofMillis(seckillProperties.getOrderStatusTtlMillis()));
+    }
+
+    private Map<String, String> status(String status, String reason) {
+        Map<String, String> fields = new HashMap<>(2);
+        fields.put(STATUS_FIELD, status);
+        fields.put(REASON_FIELD, reason == null ? "" : reason);
+        return fields;
+    }
+}
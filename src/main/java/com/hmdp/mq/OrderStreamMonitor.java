@@ -0,0 +1,223 @@
+package com.hmdp.mq;
+
+import com.hmdp.config.SeckillProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 订单消息队列监控
+ * 定时读取消费组的pending和lag，积压超过阈值时秒杀接口快速失败；
+ * 同时裁剪已确认的消息，避免stream无限增长。裁剪在定时任务中进行，每个节点每个周期一次，不占用确认消息的路径；
+ * 只在stream模式下启用
+ * @author chenshanquan
+ * @date 2025/9/26
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "hmdp.seckill", name = "queue-mode", havingValue = "stream", matchIfMissing = true)
+public class OrderStreamMonitor {
+
+    // 低版本Redis估算lag时读取的样本消息数
+    private static final int LAG_SAMPLE_SIZE = 100;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillProperties seckillProperties;
+    private final MeterRegistry meterRegistry;
+
+    // 已投递未确认的消息数
+    private volatile long pending;
+    // 未投递的消息数
+    private volatile long lag;
+    private volatile boolean overloaded;
+    // Redis 6.2以下不支持XTRIM MINID，改为按MAXLEN裁剪
+    private volatile boolean minIdUnsupported;
+
+    @PostConstruct
+    public void init() {
+        if ("maxlen".equalsIgnoreCase(seckillProperties.getTrimStrategy())
+                && seckillProperties.getTrimMaxLen() <= seckillProperties.getMaxBacklog()) {
+            // 积压最多到maxBacklog，保留的消息数不超过它时会裁掉尚未处理的订单
+            throw new IllegalStateException("trim-max-len必须大于max-backlog: " + seckillProperties.getTrimMaxLen()
+                    + " <= " + seckillProperties.getMaxBacklog());
+        }
+        Gauge.builder("seckill.stream.pending", this, OrderStreamMonitor::getPending)
+                .description("已投递未确认的订单消息数").register(meterRegistry);
+        Gauge.builder("seckill.stream.lag", this, OrderStreamMonitor::getLag)
+                .description("未投递的订单消息数").register(meterRegistry);
+    }
+
+    /**
+     * 积压是否超过阈值
+     * @param
+     * @return boolean
+     * @author chenshanquan
+     * @date 2025/9/26
+     **/
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    public long getPending() {
+        return pending;
+    }
+
+    public long getLag() {
+        return lag;
+    }
+
+    /**
+     * 定时检查消费组积压并裁剪stream
+     * @param
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/26
+     **/
+    @Scheduled(fixedDelayString = "${hmdp.seckill.monitor-interval-millis:1000}")
+    public void check() {
+        String streamName = seckillProperties.getStreamName();
+        try {
+            StreamInfo.XInfoGroup group = findGroup(streamName);
+            if (group == null) {
+                return;
+            }
+            // 先裁剪已确认的消息，stream长度更接近未处理的消息数
+            trim(streamName, group);
+
+            pending = group.pendingCount();
+            lag = lagOf(streamName, group);
+            boolean nowOverloaded = pending + lag > seckillProperties.getMaxBacklog();
+            if (nowOverloaded != overloaded) {
+                log.warn("订单消息队列积压状态变化，积压: {}，pending: {}，lag: {}", nowOverloaded, pending, lag);
+            }
+            overloaded = nowOverloaded;
+        } catch (Exception e) {
+            log.error("订单消息队列监控异常，{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 裁剪stream
+     * MINID模式：裁剪到最早的未确认消息和最后投递消息中较小的一个，只删除已确认的消息；
+     * MAXLEN模式：保留最近的trimMaxLen条消息
+     * @param streamName 队列名称
+     * @param group 消费组信息
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/26
+     **/
+    private void trim(String streamName, StreamInfo.XInfoGroup group) {
+        if (minIdUnsupported || "maxlen".equalsIgnoreCase(seckillProperties.getTrimStrategy())) {
+            stringRedisTemplate.opsForStream().trim(streamName, seckillProperties.getTrimMaxLen(), true);
+            return;
+        }
+        String minId = group.lastDeliveredId();
+        if (group.pendingCount() > 0) {
+            PendingMessagesSummary summary = stringRedisTemplate.opsForStream()
+                    .pending(streamName, seckillProperties.getGroupName());
+            if (summary != null && summary.getTotalPendingMessages() > 0
+                    && compareId(summary.minMessageId(), minId) < 0) {
+                minId = summary.minMessageId();
+            }
+        }
+        if (minId == null || "0-0".equals(minId)) {
+            return;
+        }
+        byte[] key = streamName.getBytes(StandardCharsets.UTF_8);
+        byte[] id = minId.getBytes(StandardCharsets.UTF_8);
+        // XTRIM key MINID ~ id，近似裁剪，需要Redis 6.2以上
+        try {
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("XTRIM", key,
+                    "MINID".getBytes(StandardCharsets.UTF_8), "~".getBytes(StandardCharsets.UTF_8), id));
+        } catch (Exception e) {
+            log.warn("XTRIM MINID执行失败，改为按MAXLEN裁剪，保留消息数: {}，{}", seckillProperties.getTrimMaxLen(),
+                    e.getMessage());
+            minIdUnsupported = true;
+        }
+    }
+
+    /**
+     * 未投递的消息数
+     * Redis 7以上优先使用XINFO GROUPS返回的lag；低版本或lag无法确定时，最后投递的消息就是最后写入的消息则为0，
+     * 否则以stream长度减去pending作为上界，上界不会触发积压时直接使用；
+     * 上界超过阈值时（MAXLEN裁剪保留了已确认的消息，或最早的未确认消息之后有大量已确认消息），
+     * 只读取最后投递的消息之后的LAG_SAMPLE_SIZE条消息，不足时就是精确值，否则按样本的写入速率和到最后写入消息的时间跨度估算
+     * @param streamName 队列名称
+     * @param group 消费组信息
+     * @return long
+     * @author chenshanquan
+     * @date 2025/9/26
+     **/
+    private long lagOf(String streamName, StreamInfo.XInfoGroup group) {
+        Object rawLag = group.getRaw().get("lag");
+        if (rawLag instanceof Number) {
+            return ((Number) rawLag).longValue();
+        }
+        String lastDeliveredId = group.lastDeliveredId();
+        StreamInfo.XInfoStream stream = stringRedisTemplate.opsForStream().info(streamName);
+        if (stream.streamLength() == 0 || lastDeliveredId.equals(stream.lastGeneratedId())) {
+            return 0;
+        }
+        long pendingCount = group.pendingCount();
+        long bound = Math.max(stream.streamLength() - pendingCount, 0);
+        if (pendingCount + bound <= seckillProperties.getMaxBacklog()) {
+            return bound;
+        }
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().range(streamName,
+                Range.rightUnbounded(Range.Bound.inclusive(lastDeliveredId)),
+                Limit.limit().count(LAG_SAMPLE_SIZE + 1));
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        // 起点包含最后投递的消息本身，它未被裁剪时不计入
+        int from = lastDeliveredId.equals(records.get(0).getId().getValue()) ? 1 : 0;
+        int sampled = records.size() - from;
+        if (sampled < LAG_SAMPLE_SIZE) {
+            return sampled;
+        }
+        long firstMillis = timestampOf(records.get(from).getId().getValue());
+        long sampledMillis = timestampOf(records.get(records.size() - 1).getId().getValue()) - firstMillis + 1;
+        long totalMillis = timestampOf(stream.lastGeneratedId()) - firstMillis + 1;
+        return Math.min(Math.max(sampled * totalMillis / sampledMillis, sampled), bound);
+    }
+
+    private long timestampOf(String id) {
+        return Long.parseLong(id.substring(0, id.indexOf('-')));
+    }
+
+    private StreamInfo.XInfoGroup findGroup(String streamName) {
+        StreamInfo.XInfoGroups groups = stringRedisTemplate.opsForStream().groups(streamName);
+        for (StreamInfo.XInfoGroup group : groups) {
+            if (seckillProperties.getGroupName().equals(group.groupName())) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 比较两个消息id的先后，格式为 毫秒时间戳-序号
+     */
+    private int compareId(String a, String b) {
+        String[] as = a.split("-");
+        String[] bs = b.split("-");
+        int result = Long.compare(Long.parseLong(as[0]), Long.parseLong(bs[0]));
+        return result != 0 ? result : Long.compare(Long.parseLong(as[1]), Long.parseLong(bs[1]));
+    }
+}
@@ -0,0 +1,219 @@
+package com.hmdp.mq;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.HierarchicalTimingWheel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_TIMEOUT_KEY;
+
+/**
+ * 未支付订单超时取消
+ * 订单落库后同时写入Redis的ZSET（分数为到期时间）和本地分层时间轮，到期后批量取消订单并归还Redis和数据库库存；
+ * ZSET用于持久化和故障接管：逾期未处理的订单由任意节点定时扫描取消；处理前先租用订单，处理完成后才从ZSET中删除，
+ * 处理中宕机的订单在租约到期后重新被扫描接管，归还Redis库存与删除在同一个脚本中完成，保证库存只归还一次
+ * @author chenshanquan
+ * @date 2025/10/4
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderTimeoutScheduler {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final IVoucherOrderService voucherOrderService;
+    private final IVoucherService voucherService;
+    private final OrderStatusTracker orderStatusTracker;
+    private final SeckillProperties seckillProperties;
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT;
+
+    static {
+        CLAIM_SCRIPT = new DefaultRedisScript<>();
+        CLAIM_SCRIPT.setLocation(new ClassPathResource("timeout_claim.lua"));
+        CLAIM_SCRIPT.setResultType(List.class);
+    }
+
+    private HierarchicalTimingWheel<Long> timingWheel;
+    // 已到期等待取消的订单id
+    private final BlockingQueue<Long> expiredOrders = new LinkedBlockingQueue<>();
+    private ExecutorService timeoutExecutor;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        timingWheel = new HierarchicalTimingWheel<>(seckillProperties.getTimeoutTickMillis(),
+                seckillProperties.getTimeoutWheelSize(), System.currentTimeMillis());
+        timeoutExecutor = Executors.newFixedThreadPool(2,
+                ThreadFactoryBuilder.create().setNamePrefix("order-timeout-").build());
+        // 推进时间轮的线程
+        timeoutExecutor.submit(() -> {
+            while (running) {
+                try {
+                    timingWheel.advance(seckillProperties.getTimeoutTickMillis(), expiredOrders::add);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.error("超时时间轮推进异常，{}", e.getMessage());
+                }
+            }
+        });
+        // 批量取消到期订单的线程
+        timeoutExecutor.submit(() -> {
+            while (running) {
+                try {
+                    List<Long> orderIds = new ArrayList<>();
+                    orderIds.add(expiredOrders.take());
+                    expiredOrders.drainTo(orderIds, seckillProperties.getTimeoutBatchSize() - 1);
+                    cancel(orderIds);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.error("取消超时订单异常，{}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        timeoutExecutor.shutdownNow();
+    }
+
+    /**
+     * 登记已落库订单的支付超时
+     * @param voucherOrders 已落库的订单
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/4
+     **/
+    public void schedule(List<VoucherOrder> voucherOrders) {
+        long timeout = seckillProperties.getPayTimeoutMillis();
+        if (timeout <= 0 || voucherOrders.isEmpty()) {
+            return;
+        }
+        long expiration = System.currentTimeMillis() + timeout;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (VoucherOrder voucherOrder : voucherOrders) {
+                stringConnection.zAdd(SECKILL_ORDER_TIMEOUT_KEY, expiration, voucherOrder.getId().toString());
+            }
+            return null;
+        });
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            if (!timingWheel.add(voucherOrder.getId(), expiration)) {
+                expiredOrders.add(voucherOrder.getId());
+            }
+        }
+    }
+
+    /**
+     * 扫描逾期未处理的超时订单，接管宕机节点或重启前登记的订单
+     * @param
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/4
+     **/
+    @Scheduled(fixedDelayString = "${hmdp.seckill.timeout-recover-millis:10000}")
+    public void recoverOverdue() {
+        if (seckillProperties.getPayTimeoutMillis() <= 0) {
+            return;
+        }
+        long overdue = System.currentTimeMillis() - seckillProperties.getTimeoutGraceMillis();
+        try {
+            Set<String> orderIds = stringRedisTemplate.opsForZSet().rangeByScore(SECKILL_ORDER_TIMEOUT_KEY, 0,
+                    overdue, 0, seckillProperties.getTimeoutBatchSize());
+            if (orderIds == null || orderIds.isEmpty()) {
+                return;
+            }
+            log.info("接管逾期未处理的超时订单，数量: {}", orderIds.size());
+            orderIds.forEach(orderId -> expiredOrders.add(Long.valueOf(orderId)));
+        } catch (Exception e) {
+            log.error("扫描超时订单异常，{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 批量取消订单：先租用到期订单抢到处理权，再取消订单、归还数据库库存，最后归还Redis库存并从ZSET中删除
+     * 租约期间其他节点不会处理这些订单，任一步骤失败或宕机时订单仍留在ZSET中，租约到期后由扫描重新接管
+     * @param orderIds 到期的订单id
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/4
+     **/
+    private void cancel(List<Long> orderIds) {
+        List<Long> claimed = claim(orderIds);
+        if (claimed.isEmpty()) {
+            return;
+        }
+        List<VoucherOrder> cancelled = voucherOrderService.cancelUnpaidOrders(claimed);
+        // 取消的订单仍占用唯一索引，只归还库存，保留用户的购买记录；归还的同时从ZSET中删除，重试时不会重复归还
+        Map<Long, List<Long>> orderIdsByVoucher = cancelled.stream().collect(Collectors.groupingBy(
+                VoucherOrder::getVoucherId, Collectors.mapping(VoucherOrder::getId, Collectors.toList())));
+        int released = 0;
+        for (Map.Entry<Long, List<Long>> entry : orderIdsByVoucher.entrySet()) {
+            released += voucherService.releaseCancelledStock(entry.getKey(), entry.getValue());
+        }
+        for (VoucherOrder voucherOrder : cancelled) {
+            orderStatusTracker.markCancelled(voucherOrder.getId(), "超时未支付");
+        }
+        // 已支付或不存在的订单无需取消，直接删除
+        Set<Long> cancelledIds = cancelled.stream().map(VoucherOrder::getId).collect(Collectors.toSet());
+        String[] settled = claimed.stream().filter(orderId -> !cancelledIds.contains(orderId))
+                .map(String::valueOf).toArray(String[]::new);
+        if (settled.length > 0) {
+            stringRedisTemplate.opsForZSet().remove(SECKILL_ORDER_TIMEOUT_KEY, (Object[]) settled);
+        }
+        log.info("取消超时未支付订单，到期: {}，取消: {}，归还库存: {}", claimed.size(), cancelled.size(), released);
+    }
+
+    /**
+     * 租用到期的订单：分数改为租约到期时间，只有一个节点能租用成功
+     * 时间轮的槽按tick对齐，可能比订单到期时间早触发一个tick，判断是否到期时放宽一个tick
+     * @param orderIds 到期的订单id
+     * @return java.util.List<java.lang.Long> 租用成功的订单id
+     * @author chenshanquan
+     * @date 2025/10/4
+     **/
+    private List<Long> claim(List<Long> orderIds) {
+        long now = System.currentTimeMillis();
+        List<String> args = new ArrayList<>(orderIds.size() + 2);
+        args.add(String.valueOf(now + seckillProperties.getTimeoutTickMillis()));
+        args.add(String.valueOf(now + seckillProperties.getTimeoutGraceMillis()));
+        orderIds.forEach(orderId -> args.add(orderId.toString()));
+        List<String> claimed = stringRedisTemplate.execute(CLAIM_SCRIPT,
+                Collections.singletonList(SECKILL_ORDER_TIMEOUT_KEY), args.toArray());
+        if (claimed == null) {
+            return Collections.emptyList();
+        }
+        return claimed.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,190 @@
+package com.hmdp.mq;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 订单组提交写入器
+ * 订单按用户id哈希路由到固定的分区，每个分区由一个写入线程串行落库，同一用户的订单天然串行，不需要分布式锁；
+ * 分区内在一个短时间窗口内或攒够一批后合并为一个事务落库，每个优惠券只执行一次多行插入和一次库存扣减；
+ * 调用方的一批订单按分区拆开后分别提交，不再是一个事务，部分分区失败时调用方重试整批，已落库的订单由INSERT IGNORE跳过
+ * @author chenshanquan
+ * @date 2025/9/21
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VoucherOrderBatchWriter {
+
+    private final IVoucherOrderService voucherOrderService;
+    private final SeckillProperties seckillProperties;
+
+    private Partition[] partitions;
+    private ExecutorService flushExecutor;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        int partitionCount = Math.max(seckillProperties.getWriterPartitions(), 1);
+        partitions = new Partition[partitionCount];
+        flushExecutor = Executors.newFixedThreadPool(partitionCount,
+                ThreadFactoryBuilder.create().setNamePrefix("seckill-order-writer-").build());
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition();
+            flushExecutor.submit(partitions[i]::flushLoop);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        flushExecutor.shutdownNow();
+    }
+
+    /**
+     * 提交一批订单，按用户拆分到各个分区，等待所有分区的组提交完成，最多等待writerTimeoutMillis
+     * 超时抛出TimeoutException，调用方不确认这批订单，之后重试
+     * @param voucherOrders 订单列表
+     * @return java.util.Set<java.lang.Long> 同组实际落库的订单id，重复订单不包含在内
+     * @author chenshanquan
+     * @date 2025/9/21
+     **/
+    public Set<Long> write(List<VoucherOrder> voucherOrders)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        List<List<VoucherOrder>> partitioned = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            partitioned.add(new ArrayList<>());
+        }
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            partitioned.get(partitionOf(voucherOrder.getUserId())).add(voucherOrder);
+        }
+        List<WriteRequest> requests = new ArrayList<>(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            if (partitioned.get(i).isEmpty()) {
+                continue;
+            }
+            WriteRequest request = new WriteRequest(partitioned.get(i));
+            partitions[i].requestQueue.put(request);
+            requests.add(request);
+        }
+        Set<Long> persistedIds = new HashSet<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(seckillProperties.getWriterTimeoutMillis());
+        for (WriteRequest request : requests) {
+            persistedIds.addAll(request.future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+        }
+        return persistedIds;
+    }
+
+    private int partitionOf(Long userId) {
+        return (int) Math.floorMod(userId, (long) partitions.length);
+    }
+
+    private class Partition {
+        private final BlockingQueue<WriteRequest> requestQueue = new LinkedBlockingQueue<>();
+
+        /**
+         * 组提交循环：取到第一个请求后开始计时，窗口结束或订单数达到上限时合并落库
+         * @param
+         * @return void
+         * @author chenshanquan
+         * @date 2025/9/21
+         **/
+        private void flushLoop() {
+            while (running) {
+                try {
+                    WriteRequest first = requestQueue.take();
+                    List<WriteRequest> group = new ArrayList<>();
+                    group.add(first);
+                    int orderCount = first.voucherOrders.size();
+                    long deadline = System.nanoTime()
+                            + TimeUnit.MILLISECONDS.toNanos(seckillProperties.getWriterWindowMillis());
+                    while (orderCount < seckillProperties.getWriterBatchSize()) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        WriteRequest next = requestQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        group.add(next);
+                        orderCount += next.voucherOrders.size();
+                    }
+                    flush(group, orderCount);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.error("订单组提交异常，{}", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 合并落库，合并提交失败时退化为逐个请求提交，避免一批异常订单拖垮同组的其他订单
+     * @param group 同一组的写入请求
+     * @param orderCount 订单总数
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/21
+     **/
+    private void flush(List<WriteRequest> group, int orderCount) {
+        if (group.size() == 1) {
+            commit(group.get(0));
+            return;
+        }
+        List<VoucherOrder> voucherOrders = new ArrayList<>(orderCount);
+        for (WriteRequest request : group) {
+            voucherOrders.addAll(request.voucherOrders);
+        }
+        Set<Long> persistedIds;
+        try {
+            persistedIds = new HashSet<>(voucherOrderService.createVoucherOrders(voucherOrders));
+        } catch (Exception e) {
+            log.error("订单组提交失败，逐个请求重新提交，{}", e.getMessage());
+            group.forEach(this::commit);
+            return;
+        }
+        for (WriteRequest request : group) {
+            request.future.complete(persistedIds);
+        }
+    }
+
+    private void commit(WriteRequest request) {
+        try {
+            request.future.complete(new HashSet<>(voucherOrderService.createVoucherOrders(request.voucherOrders)));
+        } catch (Exception e) {
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    private static class WriteRequest {
+        private final List<VoucherOrder> voucherOrders;
+        private final CompletableFuture<Set<Long>> future = new CompletableFuture<>();
+
+        WriteRequest(List<VoucherOrder> voucherOrders) {
+            this.voucherOrders = voucherOrders;
+        }
+    }
+}
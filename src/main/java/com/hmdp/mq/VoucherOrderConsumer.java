@@ -0,0 +1,465 @@
+package com.hmdp.mq;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 基于stream消息队列的异步下单消费者
+ * 每个节点启动多个消费者线程并根据积压自动扩缩容，每个线程使用唯一且重启后不变的消费者名称批量读取订单，
+ * 一批订单交给组提交写入器落库，并通过一次XACK确认；宕机节点的pending消息由其他节点定时接管
+ * @author chenshanquan
+ * @date 2025/9/20
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "hmdp.seckill", name = "queue-mode", havingValue = "stream", matchIfMissing = true)
+public class VoucherOrderConsumer {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final VoucherOrderBatchWriter voucherOrderBatchWriter;
+    private final OrderDeadLetterQueue orderDeadLetterQueue;
+    private final OrderStatusTracker orderStatusTracker;
+    private final OrderTimeoutScheduler orderTimeoutScheduler;
+    private final SeckillProperties seckillProperties;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    private final MeterRegistry meterRegistry;
+    private final OrderStreamMonitor orderStreamMonitor;
+
+    private ExecutorService consumerExecutor;
+    private volatile boolean running = true;
+    private String instanceId;
+    // 本节点运行中的消费者，扩容时追加，缩容时从末尾停止
+    private final List<VoucherOrderHandler> handlers = new CopyOnWriteArrayList<>();
+    // 本节点的消费者名称
+    private final List<String> consumerNames = new CopyOnWriteArrayList<>();
+
+    // 调整周期内的批次统计
+    private final LongAdder batchCount = new LongAdder();
+    private final DoubleAdder batchFillSum = new DoubleAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final LongAdder commitCount = new LongAdder();
+    private Counter consumedCounter;
+    private DistributionSummary batchFillSummary;
+    private Timer batchCommitTimer;
+
+    /**
+     * 创建消息队列后启动消费者线程
+     * @param
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/20
+     **/
+    @PostConstruct
+    public void init() {
+        // 队列和消费组只在启动时初始化一次
+        initStreamQueue();
+        // 线程数由adjustConcurrency控制在最小和最大线程数之间
+        consumerExecutor = Executors.newCachedThreadPool(
+                ThreadFactoryBuilder.create().setNamePrefix("seckill-order-").build());
+        // 节点标识在重启后保持不变，重启后的消费者可以继续处理自己的pending-list
+        instanceId = resolveInstanceId();
+        int threads = Math.min(Math.max(seckillProperties.getConsumerThreads(),
+                seckillProperties.getConsumerMinThreads()), seckillProperties.getConsumerMaxThreads());
+        for (int i = 0; i < threads; i++) {
+            startHandler();
+        }
+
+        Gauge.builder("seckill.consumer.threads", handlers, List::size).description("订单消费者线程数")
+                .register(meterRegistry);
+        consumedCounter = Counter.builder("seckill.orders.consumed").description("已落库确认的订单消息数")
+                .register(meterRegistry);
+        batchFillSummary = DistributionSummary.builder("seckill.batch.fill").description("每次读取的批次填充率")
+                .register(meterRegistry);
+        batchCommitTimer = Timer.builder("seckill.batch.commit").description("每批订单的落库耗时")
+                .register(meterRegistry);
+        log.info("订单消费者启动完成，消费者: {}", consumerNames);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        consumerExecutor.shutdownNow();
+    }
+
+    /**
+     * 根据积压、批次填充率和落库耗时调整消费者线程数
+     * 积压且批次读满、数据库不是瓶颈时线程数翻倍；积压不超过缩容阈值且批次很空时减少一个线程；
+     * 数据库落库变慢时不再扩容，避免更多线程在数据库上排队
+     * @param
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/6
+     **/
+    @Scheduled(fixedDelayString = "${hmdp.seckill.scale-interval-millis:5000}")
+    public void adjustConcurrency() {
+        long batches = batchCount.sumThenReset();
+        double fillRatio = batches == 0 ? 0 : batchFillSum.sumThenReset() / batches;
+        long commits = commitCount.sumThenReset();
+        double commitMillis = commits == 0 ? 0 : commitNanos.sumThenReset() / 1e6 / commits;
+        long lag = orderStreamMonitor.getLag();
+        int threads = handlers.size();
+        int target = threads;
+        if (lag > seckillProperties.getScaleUpLag() && fillRatio >= 0.8
+                && commitMillis <= seckillProperties.getScaleMaxCommitMillis()) {
+            target = Math.min(threads * 2, seckillProperties.getConsumerMaxThreads());
+        } else if (lag <= seckillProperties.getScaleDownLag() && fillRatio < 0.2) {
+            target = Math.max(threads - 1, seckillProperties.getConsumerMinThreads());
+        }
+        if (target == threads) {
+            return;
+        }
+        while (handlers.size() < target) {
+            startHandler();
+        }
+        while (handlers.size() > target) {
+            stopHandler();
+        }
+        log.info("调整订单消费者线程数: {} -> {}，lag: {}，批次填充率: {}，平均落库耗时: {}ms", threads, target, lag,
+                String.format("%.2f", fillRatio), String.format("%.1f", commitMillis));
+    }
+
+    private void startHandler() {
+        // 按序号命名，缩容后再扩容时复用原来的名称，继续处理它的pending-list
+        String consumerName = instanceId + "-" + handlers.size();
+        VoucherOrderHandler handler = new VoucherOrderHandler(consumerName);
+        handlers.add(handler);
+        consumerNames.add(consumerName);
+        consumerExecutor.submit(handler);
+    }
+
+    private void stopHandler() {
+        VoucherOrderHandler handler = handlers.remove(handlers.size() - 1);
+        // 处理完当前批次后退出，未确认的消息由claimIdlePending转给其他消费者
+        handler.active = false;
+        consumerNames.remove(handler.consumerName);
+    }
+
+    /**
+     * 定时接管其他节点长时间未处理的消息
+     * 节点宕机后它的消费者不再读取消息，pending-list不会再被处理；按XINFO CONSUMERS找出不活跃超过claimIdleMillis的消费者，
+     * 逐个查询它们的pending-list，空闲超过claimIdleMillis的消息通过XCLAIM转给本节点的消费者，由本节点按退避规则重试；
+     * 只查询不活跃消费者的pending-list，活跃消费者退避中的消息不会挡住宕机消费者的消息；
+     * XCLAIM会在服务端再次校验空闲时间，多个节点同时接管时同一条消息只会被接管一次
+     * @param
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/28
+     **/
+    @Scheduled(fixedDelayString = "${hmdp.seckill.claim-interval-millis:10000}")
+    public void claimIdlePending() {
+        String queueName = seckillProperties.getStreamName();
+        String groupName = seckillProperties.getGroupName();
+        long claimIdleMillis = seckillProperties.getClaimIdleMillis();
+        try {
+            StreamOperations<String, Object, Object> opsForStream = stringRedisTemplate.opsForStream();
+            StreamInfo.XInfoConsumers consumers = opsForStream.consumers(queueName, groupName);
+            List<RecordId> idleIds = new ArrayList<>();
+            for (StreamInfo.XInfoConsumer consumer : consumers) {
+                int remaining = seckillProperties.getClaimBatchSize() - idleIds.size();
+                if (remaining <= 0) {
+                    break;
+                }
+                if (this.consumerNames.contains(consumer.consumerName()) || consumer.pendingCount() == 0
+                        || consumer.idleTimeMs() < claimIdleMillis) {
+                    continue;
+                }
+                PendingMessages pendingMessages = opsForStream.pending(queueName,
+                        Consumer.from(groupName, consumer.consumerName()), Range.unbounded(), remaining);
+                for (PendingMessage pendingMessage : pendingMessages) {
+                    if (pendingMessage.getElapsedTimeSinceLastDelivery().toMillis() >= claimIdleMillis) {
+                        idleIds.add(pendingMessage.getId());
+                    }
+                }
+            }
+            // 平均分给本节点的消费者
+            List<String> consumerNames = new ArrayList<>(this.consumerNames);
+            int claimed = 0;
+            for (int i = 0; i < consumerNames.size(); i++) {
+                List<RecordId> ids = new ArrayList<>();
+                for (int j = i; j < idleIds.size(); j += consumerNames.size()) {
+                    ids.add(idleIds.get(j));
+                }
+                if (ids.isEmpty()) {
+                    continue;
+                }
+                List<MapRecord<String, Object, Object>> records = opsForStream.claim(queueName, groupName,
+                        consumerNames.get(i), Duration.ofMillis(claimIdleMillis), ids.toArray(new RecordId[0]));
+                claimed += records == null ? 0 : records.size();
+            }
+            if (claimed > 0) {
+                log.warn("接管其他消费者的pending消息，数量: {}", claimed);
+            }
+
+            // 清理没有pending消息且长时间不活跃的消费者
+            for (StreamInfo.XInfoConsumer consumer : consumers) {
+                if (!consumerNames.contains(consumer.consumerName()) && consumer.pendingCount() == 0
+                        && consumer.idleTimeMs() >= seckillProperties.getConsumerExpireMillis()) {
+                    opsForStream.deleteConsumer(queueName, Consumer.from(groupName, consumer.consumerName()));
+                    log.info("删除不活跃的消费者: {}", consumer.consumerName());
+                }
+            }
+        } catch (Exception e) {
+            log.error("接管pending消息异常，{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 节点标识，未配置时使用 主机名:端口
+     */
+    private String resolveInstanceId() {
+        if (StrUtil.isNotBlank(seckillProperties.getInstanceId())) {
+            return seckillProperties.getInstanceId();
+        }
+        return NetUtil.getLocalHostName() + ":" + serverPort;
+    }
+
+    /**
+     * 创建消息队列名称与组名称，不然会报错
+     * @param
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/16 9:37
+     **/
+    private void initStreamQueue() {
+        String queueName = seckillProperties.getStreamName();
+        String groupName = seckillProperties.getGroupName();
+        Boolean exists = stringRedisTemplate.hasKey(queueName);
+        if (BooleanUtil.isFalse(exists)) {
+            log.info("基于stream消息队列名称不存在，开始创建消息队列名称：" + queueName);
+            // 不存在，需要创建
+            stringRedisTemplate.opsForStream().createGroup(queueName, ReadOffset.latest(), groupName);
+            log.info("队列名称:" + queueName + " 与group:" + groupName + "创建完毕");
+            return;
+        }
+        // stream存在，判断group是否存在
+        StreamInfo.XInfoGroups groups = stringRedisTemplate.opsForStream().groups(queueName);
+        if (groups.stream().noneMatch(group -> groupName.equals(group.groupName()))) {
+            log.info("group不存在，开始创建group");
+            // group不存在，创建group
+            stringRedisTemplate.opsForStream().createGroup(queueName, ReadOffset.latest(), groupName);
+            log.info("group创建完毕");
+        }
+    }
+
+    // 异步下单任务
+    private class VoucherOrderHandler implements Runnable {
+        private final String queueName = seckillProperties.getStreamName();
+        private final String groupName = seckillProperties.getGroupName();
+        private final String consumerName;
+        // 下次检查pending-list的时间
+        private long nextPendingCheck;
+        // 连续失败次数，用于计算退避时间
+        private int failures;
+        // 缩容时置为false，线程处理完当前批次后退出
+        private volatile boolean active = true;
+
+        VoucherOrderHandler(String consumerName) {
+            this.consumerName = consumerName;
+        }
+
+        @Override
+        public void run() {
+            while (running && active) {
+                try {
+                    // 定时处理pending-list中到达重试时间的订单
+                    if (System.currentTimeMillis() >= nextPendingCheck) {
+                        handlePendingList();
+                        nextPendingCheck = System.currentTimeMillis() + seckillProperties.getPendingCheckMillis();
+                    }
+
+                    // 批量获取消息队列的信息
+                    List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                            // 消费组和名称
+                            Consumer.from(groupName, consumerName),
+                            // 每次最多读取batchSize条，设置阻塞时间
+                            StreamReadOptions.empty().count(seckillProperties.getBatchSize())
+                                    .block(Duration.ofMillis(seckillProperties.getBlockMillis())),
+                            // 读取第一个未读取的
+                            StreamOffset.create(queueName, ReadOffset.lastConsumed()));
+
+                    // 判断是否获取成功，如果获取失败进行下一次循环
+                    if (records == null || records.isEmpty()) {
+                        continue;
+                    }
+
+                    double fill = (double) records.size() / seckillProperties.getBatchSize();
+                    batchCount.increment();
+                    batchFillSum.add(fill);
+                    batchFillSummary.record(fill);
+
+                    // 批量下单并确认
+                    handleVoucherOrders(records);
+                    failures = 0;
+                } catch (Exception e) {
+                    // 出现异常，订单留在pending-list中等待重试，退避后再继续读取
+                    log.error("处理下单异常，{}", e.getMessage());
+                    backoff();
+                }
+            }
+        }
+
+        /**
+         * 处理pending-list里的订单
+         * 根据XPENDING返回的投递次数指数退避重试，超过重试次数的转入死信队列
+         * @param
+         * @return void
+         * @author chenshanquan
+         * @date 2025/9/15 15:26
+         **/
+        private void handlePendingList() {
+            StreamOperations<String, Object, Object> opsForStream = stringRedisTemplate.opsForStream();
+            PendingMessages pendingMessages = opsForStream.pending(queueName, Consumer.from(groupName, consumerName),
+                    Range.unbounded(), seckillProperties.getBatchSize());
+            if (pendingMessages == null || pendingMessages.isEmpty()) {
+                return;
+            }
+            List<RecordId> retryIds = new ArrayList<>();
+            for (PendingMessage pendingMessage : pendingMessages) {
+                long deliveries = pendingMessage.getTotalDeliveryCount();
+                if (deliveries > seckillProperties.getMaxRetries()) {
+                    deadLetter(pendingMessage, deliveries);
+                    continue;
+                }
+                long idleMillis = pendingMessage.getElapsedTimeSinceLastDelivery().toMillis();
+                if (idleMillis >= retryDelayMillis(deliveries)) {
+                    retryIds.add(pendingMessage.getId());
+                }
+            }
+            if (retryIds.isEmpty()) {
+                return;
+            }
+            // XCLAIM给自己，投递次数加1并重置空闲时间，同时取回消息内容
+            List<MapRecord<String, Object, Object>> records = opsForStream.claim(queueName, groupName, consumerName,
+                    Duration.ZERO, retryIds.toArray(new RecordId[0]));
+            if (records == null || records.isEmpty()) {
+                return;
+            }
+            try {
+                handleVoucherOrders(records);
+            } catch (Exception e) {
+                // 整批失败时逐条重试，只让有问题的订单留在pending-list中
+                log.error("处理pending-list订单异常，逐条重试，{}", e.getMessage());
+                for (MapRecord<String, Object, Object> record : records) {
+                    try {
+                        handleVoucherOrders(Collections.singletonList(record));
+                    } catch (Exception ex) {
+                        log.error("处理pending-list订单失败，消息ID: {}，{}", record.getId(), ex.getMessage());
+                    }
+                }
+            }
+        }
+
+        private void deadLetter(PendingMessage pendingMessage, long deliveries) {
+            RecordId recordId = pendingMessage.getId();
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().range(queueName,
+                    Range.closed(recordId.getValue(), recordId.getValue()));
+            if (records == null || records.isEmpty()) {
+                // 消息已被裁剪，内容无法转入死信队列，确认并记录消息id
+                orderDeadLetterQueue.deadLetterTrimmed(recordId, deliveries, pendingMessage.getConsumerName());
+                return;
+            }
+            orderDeadLetterQueue.deadLetter(records.get(0), deliveries);
+        }
+
+        /**
+         * 第n次投递失败后的重试间隔：base * 2^(n-1)，不超过上限
+         */
+        private long retryDelayMillis(long deliveries) {
+            long delay = seckillProperties.getRetryBaseMillis() << Math.min(Math.max(deliveries - 1, 0), 20);
+            return Math.min(delay, seckillProperties.getRetryMaxMillis());
+        }
+
+        private void backoff() {
+            failures++;
+            try {
+                Thread.sleep(retryDelayMillis(failures));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+
+        /**
+         * 批量下单：一批订单交给组提交写入器按用户分区落库，成功后一次性确认所有消息
+         * 同一用户的订单总是路由到同一个写入分区串行处理，重复下单由Redis去重和唯一索引兜底，不需要分布式锁
+         * @param records 消息列表
+         * @return void
+         * @author chenshanquan
+         * @date 2025/9/20
+         **/
+        private void handleVoucherOrders(List<MapRecord<String, Object, Object>> records) throws Exception {
+            List<VoucherOrder> voucherOrders = new ArrayList<>(records.size());
+            List<RecordId> recordIds = new ArrayList<>(records.size());
+            for (MapRecord<String, Object, Object> record : records) {
+                // 解析消息队列的订单
+                voucherOrders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+                recordIds.add(record.getId());
+            }
+
+            // 组提交批量下单，重复订单被唯一索引拦截后同样确认
+            long start = System.nanoTime();
+            Set<Long> persistedIds = voucherOrderBatchWriter.write(voucherOrders);
+            long elapsed = System.nanoTime() - start;
+            commitNanos.add(elapsed);
+            commitCount.increment();
+            batchCommitTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            consumedCounter.increment(records.size());
+
+            // 先登记支付超时再ack，ack前宕机时消息会被重新投递，重复登记只覆盖ZSET中的到期时间
+            orderTimeoutScheduler.schedule(voucherOrders.stream()
+                    .filter(voucherOrder -> persistedIds.contains(voucherOrder.getId()))
+                    .collect(Collectors.toList()));
+
+            // 更新订单状态并一次ack确认整批消息
+            orderStatusTracker.acknowledge(voucherOrders, persistedIds, recordIds);
+            log.info("消息确认成功，确认数量: {}", recordIds.size());
+        }
+    }
+}
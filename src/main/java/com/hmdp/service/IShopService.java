@@ -16,6 +16,8 @@ public interface IShopService extends IService<Shop> {
 
 	Shop queryShopById(Long id);
 
+	boolean mightExist(Long id);
+
 	boolean updateShop(Shop shop);
 
 	Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
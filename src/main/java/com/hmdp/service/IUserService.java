@@ -1,10 +1,12 @@
 package com.hmdp.service;
 
 import javax.servlet.http.HttpSession;
+import java.util.List;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 
 /**
@@ -22,6 +24,10 @@ public interface IUserService extends IService<User> {
 
     Result queryById(Long id);
 
+    UserDTO queryUser(Long id);
+
+    List<UserDTO> queryUsers(List<Long> ids);
+
     Result sign();
 
     Result signCount();
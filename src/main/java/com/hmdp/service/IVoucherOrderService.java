@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 
+import java.util.List;
+
 /**
  * <p>
  * 服务类
@@ -18,5 +20,17 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
 	void createVoucherOrder(VoucherOrder voucherOrder);
 
+	List<Long> createVoucherOrders(List<VoucherOrder> voucherOrders);
+
+	List<VoucherOrder> cancelUnpaidOrders(List<Long> orderIds);
+
 	Result createVoucherOrder(Long voucherId);
+
+	int replayDeadLetterOrders(int count);
+
+	Result queryOrderStatus(Long orderId);
+
+	Result joinWaitingRoom(Long voucherId);
+
+	Result queryWaitingRoom(Long voucherId);
 }
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +18,19 @@ public interface IVoucherService extends IService<Voucher> {
 
     Result queryVoucherOfShop(Long shopId);
 
+    List<Voucher> queryVoucherListOfShop(Long shopId);
+
     void addSeckillVoucher(Voucher voucher);
+
+    boolean preloadSeckillVoucher(Long voucherId);
+
+    void preloadSeckillVouchers();
+
+    boolean replenishSeckillStock(Long voucherId, int count);
+
+    long migrateSeckillOrderBitmap(Long voucherId);
+
+    void releaseSeckillStock(Long voucherId, List<Long> userIds);
+
+    int releaseCancelledStock(Long voucherId, List<Long> orderIds);
 }
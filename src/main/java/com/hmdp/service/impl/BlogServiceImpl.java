@@ -1,7 +1,6 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
@@ -9,24 +8,35 @@ import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.entity.Follow;
-import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheStrategy;
+import com.hmdp.utils.CacheUtil;
+import com.hmdp.utils.HmdpCacheEvict;
+import com.hmdp.utils.HmdpCacheable;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import lombok.RequiredArgsConstructor;
+import org.springframework.aop.framework.AopContext;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_TTL;
+
 /**
  * <p>
  * 服务实现类
@@ -41,6 +51,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private final IUserService userService;
     private final IFollowService followService;
     private final StringRedisTemplate stringRedisTemplate;
+    private final CacheUtil cacheUtil;
 
     private static final String BLOG_LIKED_KEY = "blog:liked:";
     private final String FEED_KEY = "feed:";
@@ -60,11 +71,9 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         Page<Blog> page = query().orderByDesc("liked").page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            setUserByBlog(blog);
-            setLikedFlagByBlog(blog);
-        });
+        // 批量查询用户
+        setUserByBlogs(records);
+        records.forEach(this::setLikedFlagByBlog);
         return Result.ok(records);
     }
 
@@ -77,16 +86,31 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
      **/
     @Override
     public Result queryBlogById(Long id) {
-        Blog blog = getById(id);
-        if (blog == null) {
+        Blog cached = ((IBlogService) AopContext.currentProxy()).queryBlog(id);
+        if (cached == null) {
             return Result.fail("笔记不存在");
         }
-        // 设置博客的用户相关信息
-        setUserByBlog(blog);
+        // 缓存返回的对象可能被并发请求共享，复制后再设置博客的用户相关信息
+        Blog blog = BeanUtil.copyProperties(cached, Blog.class);
+        setUserByBlogs(Collections.singletonList(blog));
         setLikedFlagByBlog(blog);
         return Result.ok(blog);
     }
 
+    /**
+     * 根据id查询博客，互斥锁解决缓存击穿；返回的对象可能被并发请求共享，调用方修改前需要先复制
+     * @param id 博客id
+     * @return com.hmdp.entity.Blog 博客不存在时返回null
+     * @author chenshanquan
+     * @date 2025/10/9
+     **/
+    @Override
+    @HmdpCacheable(prefix = CACHE_BLOG_KEY, key = "#id", strategy = CacheStrategy.MUTEX, ttl = CACHE_BLOG_TTL,
+            jitter = 5)
+    public Blog queryBlog(Long id) {
+        return getById(id);
+    }
+
     /**
      * 博客点赞
      * @param id 博客id
@@ -95,6 +119,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
      * @date 2025/9/16 12:00
      **/
     @Override
+    @HmdpCacheEvict(prefix = CACHE_BLOG_KEY, key = "#id")
     public Result likeBlog(Long id) {
         // 获取用户信息
         UserDTO user = UserHolder.getUser();
@@ -135,15 +160,9 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         }
         // 将数据转为Long列表
         List<Long> ids = result.stream().map(Long::valueOf).collect(Collectors.toList());
-        String idsStr = StrUtil.join(",", ids);
-        // 根据数据查询点赞人
-        List<User> users = userService.lambdaQuery().select(User::getId, User::getIcon, User::getNickName)
-                // 根据ids查询
-                .in(User::getId, ids)
-                // 结尾指定返回数据的顺序
-                .last(" ORDER BY FIELD(id," + idsStr + ")").list();
-        // users转为UserDTO返回去除敏感信息
-        List<UserDTO> userDTOS = BeanUtil.copyToList(users, UserDTO.class);
+        // 批量查询点赞人，按点赞顺序返回
+        List<UserDTO> userDTOS = userService.queryUsers(ids).stream().filter(Objects::nonNull)
+                .collect(Collectors.toList());
         return Result.ok(userDTOS);
     }
 
@@ -214,16 +233,12 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             }
         }
 
-        // 查询blog数据
-        String idsStr = StrUtil.join(",", ids);
-        List<Blog> blogs = lambdaQuery().in(Blog::getId, ids)
-                // 按顺序获取blog
-                .last(" ORDER BY FIELD(id," + idsStr + ")").list();
+        // 批量查询blog数据，按收件箱的顺序返回
+        List<Blog> blogs = cacheUtil.multiGet(CACHE_BLOG_KEY, ids, Blog.class, this::listByIds, Blog::getId,
+                CACHE_BLOG_TTL, TimeUnit.MINUTES).stream().filter(Objects::nonNull).collect(Collectors.toList());
         // 设置博客的用户相关信息
-        for (Blog blog : blogs) {
-            setUserByBlog(blog);
-            setLikedFlagByBlog(blog);
-        }
+        setUserByBlogs(blogs);
+        blogs.forEach(this::setLikedFlagByBlog);
 
         // 封装并返回
         ScrollResult scrollResult = new ScrollResult();
@@ -254,16 +269,29 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     }
 
     /**
-     * 设置博客的用户信息
-     * @param blog 博客
+     * 批量设置博客的用户信息
+     * @param blogs 博客
      * @return void
      * @author chenshanquan
-     * @date 2025/9/16 10:13
+     * @date 2025/10/11
      **/
-    private void setUserByBlog(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+    private void setUserByBlogs(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).distinct().collect(Collectors.toList());
+        Map<Long, UserDTO> users = new HashMap<>(userIds.size() * 2);
+        for (UserDTO user : userService.queryUsers(userIds)) {
+            if (user != null) {
+                users.put(user.getId(), user);
+            }
+        }
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
     }
 }
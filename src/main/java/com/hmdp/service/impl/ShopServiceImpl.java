@@ -1,19 +1,17 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
-import com.alibaba.fastjson.JSONObject;
-import com.alibaba.fastjson.TypeReference;
+import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.CacheStrategy;
 import com.hmdp.utils.CacheUtil;
+import com.hmdp.utils.HmdpCacheEvict;
+import com.hmdp.utils.HmdpCacheable;
 import com.hmdp.utils.RedisConstants;
-import com.hmdp.utils.RedisData;
 import com.hmdp.utils.SystemConstants;
 import lombok.RequiredArgsConstructor;
 import org.redisson.api.RBloomFilter;
@@ -26,14 +24,9 @@ import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -48,8 +41,6 @@ import java.util.concurrent.TimeUnit;
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
     private final StringRedisTemplate stringRedisTemplate;
-    // 线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(1);
 
     private final CacheUtil cacheUtil;
 
@@ -57,77 +48,38 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     private final RBloomFilter<String> bloomFilter;
 
     /**
-     * 根据id查询商铺
+     * 根据id查询商铺，逻辑过期解决缓存击穿--缓存未命中或重建时执行，热点数据在逻辑过期前自动刷新
+     * 调用前先用mightExist过滤不存在的id，避免为每个随机id查询缓存并写入空值
      */
     @Override
+    @HmdpCacheable(prefix = RedisConstants.CACHE_SHOP_KEY, key = "#id", strategy = CacheStrategy.LOGICAL_EXPIRE,
+            ttl = RedisConstants.CACHE_SHOP_TTL, timeUnit = TimeUnit.SECONDS)
     public Shop queryShopById(Long id) {
-        if (!bloomFilter.contains(String.valueOf(id))) {
-            return null;
-        }
-        // 互斥锁解决缓存击穿
-        // return cacheUtil.getWithMutex(RedisConstants.CACHE_SHOP_KEY, id, Shop.class,
-        // this::getById,
-        // RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        // 逻辑过期解决缓存击穿
-        return queryShopByIdLogicalExpire(id);
+        return getById(id);
     }
 
     /**
-     * 热点数据采用逻辑过期解决缓存击穿--需要提前存入数据 不要用hash存储 也不要使用有泛型的对象 容易出错
-     */
-    public Shop queryShopByIdLogicalExpire(Long id) {
-        // Redis查询商铺
-        String shopKey = RedisConstants.CACHE_SHOP_KEY + id;
-
-        // Redis获取JSON 数据
-        String json = stringRedisTemplate.opsForValue().get(shopKey);
-        if (StrUtil.isBlank(json)) {
-            return null;
-        }
-
-        // 反序列化为 RedisData<Shop>
-        RedisData<Shop> redisData = JSONObject.parseObject(json, new TypeReference<RedisData<Shop>>() {
-        });
-
-        if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
-            return redisData.getData();
-        }
-
-        // 没查到过期了 写入时进行逻辑过期
-        if (tryLock(id)) {
-            // 创建线程进行写入
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                // 数据库查询
-                try {
-                    // Thread.sleep(200);
-                    Shop shop = getById(id);
-                    redisData.setData(shop);
-                    redisData.setExpireTime(LocalDateTime.now().plusSeconds(RedisConstants.CACHE_SHOP_TTL));
-                    String jsonStr = JSONUtil.toJsonStr(redisData);
-                    stringRedisTemplate.opsForValue().set(shopKey, jsonStr);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    // 线程写入完成释放锁
-                    unLock(id);
-                }
-            });
-        }
-        // 未获取到锁 直接返回过期数据
-        return redisData.getData();
+     * 布隆过滤器判断商铺是否可能存在，不经过缓存
+     * @param id 商铺id
+     * @return boolean 返回false时商铺一定不存在
+     * @author chenshanquan
+     * @date 2025/10/13
+     **/
+    @Override
+    public boolean mightExist(Long id) {
+        return bloomFilter.contains(String.valueOf(id));
     }
 
     @Transactional
     @Override
+    @HmdpCacheEvict(prefix = RedisConstants.CACHE_SHOP_KEY, key = "#shop.id")
     public boolean updateShop(Shop shop) {
         if (shop.getId() == null) {
             return false;
         }
 
-        // 先更新数据库
+        // 先更新数据库，事务提交后再删除缓存，同时失效各节点的本地缓存
         updateById(shop);
-        // 再删除缓存
-        stringRedisTemplate.delete(RedisConstants.CACHE_SHOP_KEY + shop.getId());
 
         return true;
     }
@@ -174,37 +126,26 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
 
         // 收集店铺id，店铺距离
-        List<Long> ids = new ArrayList<>(DEFAULT_BATCH_SIZE);
-        Map<String, Distance> map = new HashMap<>(DEFAULT_BATCH_SIZE);
+        List<Long> ids = new ArrayList<>(content.size() - from);
+        List<Distance> distances = new ArrayList<>(content.size() - from);
         content.stream().skip(from).forEach(item -> {
-            String name = item.getContent().getName();
-            ids.add(Long.valueOf(name));
-            Distance distance = item.getDistance();
-            map.put(name, distance);
+            ids.add(Long.valueOf(item.getContent().getName()));
+            distances.add(item.getDistance());
         });
 
-        String idsStr = StrUtil.join(",", ids);
-
-        List<Shop> shops = lambdaQuery().in(Shop::getId, ids).last(" ORDER BY FIELD(id," + idsStr + ")").list();
-        for (Shop shop : shops) {
-            shop.setDistance(map.get(shop.getId().toString()).getValue());
+        // 批量查询店铺，与按id查询共用逻辑过期缓存，按距离顺序返回
+        List<Shop> cached = cacheUtil.multiGetWithLogicalExpire(RedisConstants.CACHE_SHOP_KEY, ids, Shop.class,
+                this::listByIds, Shop::getId, RedisConstants.CACHE_SHOP_TTL, TimeUnit.SECONDS);
+        List<Shop> shops = new ArrayList<>(cached.size());
+        for (int i = 0; i < cached.size(); i++) {
+            if (cached.get(i) == null) {
+                continue;
+            }
+            // 缓存的对象在本地缓存中共享，复制后再设置距离
+            Shop shop = BeanUtil.copyProperties(cached.get(i), Shop.class);
+            shop.setDistance(distances.get(i).getValue());
+            shops.add(shop);
         }
         return Result.ok(shops);
     }
-
-    /**
-     * 获取锁 使用setnx 如果有人操作 则写入失败 返回false
-     */
-    private boolean tryLock(Long id) {
-        Boolean b = stringRedisTemplate.opsForValue().setIfAbsent(RedisConstants.LOCK_SHOP_KEY + id, "1", 3,
-                TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(b);
-    }
-
-    /**
-     * 操作完后 删除数据 释放锁
-     */
-    private void unLock(Long id) {
-        stringRedisTemplate.delete(RedisConstants.LOCK_SHOP_KEY);
-    }
 }
@@ -12,11 +12,14 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheUtil;
+import com.hmdp.utils.HmdpCacheable;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import lombok.RequiredArgsConstructor;
+import org.springframework.aop.framework.AopContext;
 import org.springframework.data.redis.connection.BitFieldSubCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -42,6 +45,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     private final StringRedisTemplate stringRedisTemplate;
 
+    private final CacheUtil cacheUtil;
+
     private static final String DATE_FORMAT = ":yyyy-MM";
 
     @Override
@@ -121,12 +126,35 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Override
     public Result queryById(Long id) {
+        return Result.ok(((IUserService) AopContext.currentProxy()).queryUser(id));
+    }
+
+    /**
+     * 根据id查询用户的公开信息，缓存空值解决缓存穿透
+     * @param id 用户id
+     * @return com.hmdp.dto.UserDTO 用户不存在时返回null
+     * @author chenshanquan
+     * @date 2025/10/9
+     **/
+    @Override
+    @HmdpCacheable(prefix = RedisConstants.CACHE_USER_KEY, key = "#id", ttl = RedisConstants.CACHE_USER_TTL, jitter = 5)
+    public UserDTO queryUser(Long id) {
         User user = getById(id);
-        if (user == null) {
-            return Result.ok();
-        }
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
-        return Result.ok(userDTO);
+        return user == null ? null : BeanUtil.copyProperties(user, UserDTO.class);
+    }
+
+    /**
+     * 批量查询用户的公开信息，与queryUser共用缓存
+     * @param ids 用户id
+     * @return java.util.List<com.hmdp.dto.UserDTO> 与ids的顺序一致，不存在的用户为null
+     * @author chenshanquan
+     * @date 2025/10/11
+     **/
+    @Override
+    public List<UserDTO> queryUsers(List<Long> ids) {
+        return cacheUtil.multiGet(RedisConstants.CACHE_USER_KEY, ids, UserDTO.class,
+                userIds -> BeanUtil.copyToList(listByIds(userIds), UserDTO.class), UserDTO::getId,
+                RedisConstants.CACHE_USER_TTL, TimeUnit.MINUTES);
     }
 
     /**
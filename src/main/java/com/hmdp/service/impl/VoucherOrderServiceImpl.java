@@ -1,40 +1,46 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.util.BooleanUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.dto.OrderStatusDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
+import com.hmdp.dto.WaitingTicketDTO;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.mq.LocalOrderQueue;
+import com.hmdp.mq.OrderDeadLetterQueue;
+import com.hmdp.mq.OrderStatusTracker;
+import com.hmdp.mq.OrderStreamMonitor;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillPermitGate;
+import com.hmdp.utils.SeckillWaitingRoom;
+import com.hmdp.utils.SoldOutRegistry;
 import com.hmdp.utils.UserHolder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.connection.stream.Consumer;
-import org.springframework.data.redis.connection.stream.MapRecord;
-import org.springframework.data.redis.connection.stream.ReadOffset;
-import org.springframework.data.redis.connection.stream.StreamInfo;
-import org.springframework.data.redis.connection.stream.StreamOffset;
-import org.springframework.data.redis.connection.stream.StreamReadOptions;
-import org.springframework.data.redis.core.StreamOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.annotation.PostConstruct;
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_BUCKET_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_BITMAP_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STATUS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_KEY;
 
 /**
  * <p>
@@ -51,14 +57,24 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     private final RedisIdWorker redisIdWorker;
     private final ISeckillVoucherService iSeckillVoucherService;
+    private final IVoucherService iVoucherService;
     private final StringRedisTemplate stringRedisTemplate;
-    private final RedissonClient redissonClient;
+    private final SoldOutRegistry soldOutRegistry;
+    private final SeckillPermitGate seckillPermitGate;
+    private final SeckillWaitingRoom seckillWaitingRoom;
+    private final SeckillProperties seckillProperties;
+    private final ObjectProvider<OrderStreamMonitor> orderStreamMonitorProvider;
+    private final OrderDeadLetterQueue orderDeadLetterQueue;
+    private final OrderStatusTracker orderStatusTracker;
+    // 只在local模式下存在
+    private final ObjectProvider<LocalOrderQueue> localOrderQueueProvider;
+
+    // 订单状态：1 未支付；4 已取消
+    private static final int ORDER_STATUS_UNPAID = 1;
+    private static final int ORDER_STATUS_CANCELLED = 4;
 
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
 
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
-    private IVoucherOrderService proxy;
-
     static {
         // 静态代码块初始化加载lua脚本
         SECKILL_SCRIPT = new DefaultRedisScript<>();
@@ -66,130 +82,6 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
-    /**
-     * 类初始化后执行的方法
-     * @param
-     * @return void
-     * @author chenshanquan
-     * @date 2025/9/15 9:13
-     **/
-    @PostConstruct
-    private void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
-    }
-
-    // 异步下单任务
-    private class VoucherOrderHandler implements Runnable {
-        String queueName = "stream.orders";
-
-        @Override
-        public void run() {
-            while (true) {
-                try {
-                    // 根据控制报错，队列不存在，就先创建
-                    initStreamQueue();
-                    StreamOperations<String, Object, Object> opsForStream = stringRedisTemplate.opsForStream();
-                    // 获取消息队列的信息
-                    List<MapRecord<String, Object, Object>> result = opsForStream.read(
-                            // 消费组和名称
-                            Consumer.from("g1", "c1"),
-                            // 设置阻塞时间2s
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            // 读取第一个未读取的
-                            StreamOffset.create(queueName, ReadOffset.lastConsumed()));
-
-                    // 判断是否获取成功，如果获取失败进行下一次循环
-                    if (result == null || result.isEmpty()) {
-                        continue;
-                    }
-
-                    // 解析消息队列的订单
-                    MapRecord<String, Object, Object> entries = result.get(0);
-
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(entries.getValue(), new VoucherOrder(), true);
-
-                    // 获取成功，下单
-                    handleVoucherOrder(voucherOrder);
-
-                    // ack确认从队列移除消息
-                    Long g1 = opsForStream.acknowledge(queueName, "g1", entries.getId());
-                    log.info("消息确认成功，消息ID: {}", g1);
-                } catch (Exception e) {
-                    // 出现异常，未获取到待处理的订单，从pending-list中获取正在处理的订单
-                    handlePendingList();
-                }
-            }
-        }
-
-        /**
-         * 创建消息队列名称与组名称，不然会报错
-         * @param
-         * @return void
-         * @author chenshanquan
-         * @date 2025/9/16 9:37
-         **/
-        private void initStreamQueue() {
-            Boolean exists = stringRedisTemplate.hasKey(queueName);
-            if (BooleanUtil.isFalse(exists)) {
-                log.info("基于stream消息队列名称不存在，开始创建消息队列名称：" + queueName);
-                // 不存在，需要创建
-                stringRedisTemplate.opsForStream().createGroup(queueName, ReadOffset.latest(), "g1");
-                log.info("队列名称:" + queueName + " 与group:g1创建完毕");
-                return;
-            }
-            // stream存在，判断group是否存在
-            StreamInfo.XInfoGroups groups = stringRedisTemplate.opsForStream().groups(queueName);
-            if (groups.isEmpty()) {
-                log.info("group不存在，开始创建group");
-                // group不存在，创建group
-                stringRedisTemplate.opsForStream().createGroup(queueName, ReadOffset.latest(), "g1");
-                log.info("group创建完毕");
-            }
-        }
-
-        /**
-         * 处理pending-list里的订单
-         * @param
-         * @return void
-         * @author chenshanquan
-         * @date 2025/9/15 15:26
-         **/
-        private void handlePendingList() {
-            while (true) {
-                try {
-                    StreamOperations<String, Object, Object> opsForStream = stringRedisTemplate.opsForStream();
-                    // 获取pending-list的信息
-                    List<MapRecord<String, Object, Object>> result = opsForStream.read(
-                            // 消费组和名称
-                            Consumer.from("g1", "c1"),
-                            // 设置阻塞时间2s
-                            StreamReadOptions.empty().count(1),
-                            // 读取第一个未读取的
-                            StreamOffset.create(queueName, ReadOffset.from("0")));
-
-                    // 判断是否获取成功，如果获取失败结束
-                    if (result == null || result.isEmpty()) {
-                        break;
-                    }
-
-                    // 解析pending-list的订单
-                    MapRecord<String, Object, Object> entries = result.get(0);
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(entries.getValue(), new VoucherOrder(), true);
-
-                    // 获取成功，下单
-                    handleVoucherOrder(voucherOrder);
-
-                    // ack确认从队列移除消息
-                    Long g1 = opsForStream.acknowledge(queueName, "g1", entries.getId());
-                    log.info("消息确认成功，消息ID: {}", g1);
-                } catch (Exception e) {
-                    // 出现异常，继续循环
-                    log.error("处理pending-list订单异常，{}", e);
-                }
-            }
-        }
-    }
-
     /*
      * private final BlockingQueue<VoucherOrder> orderTask = new
      * ArrayBlockingQueue<>(1024 * 1024);
@@ -201,29 +93,6 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      * log.error("处理下单异常，{}", e); } } } }
      */
 
-    /**
-     * 下单处理器
-     * @param voucherOrder 订单
-     * @return void
-     * @author chenshanquan
-     * @date 2025/9/15 9:16
-     **/
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        // 获取用户对象
-        Long userId = voucherOrder.getUserId();
-        // 创建锁对象
-        RLock lock = redissonClient.getLock("lock:order:" + userId);
-        boolean b = lock.tryLock();
-        if (!b) {
-            log.error("获取锁失败");
-            return;
-        }
-
-        // 获取订单id
-        Long voucherId = voucherOrder.getVoucherId();
-        proxy.createVoucherOrder(voucherOrder);
-    }
-
     /**
      * 创建订单-V2
      * @param voucherOrder 订单对象
@@ -253,6 +122,80 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         save(voucherOrder);
     }
 
+    /**
+     * 批量创建订单，一批订单在同一个事务中落库
+     * 按优惠券分组，每个优惠券只执行一次多行插入和一次库存扣减，重复订单由(user_id, voucher_id)唯一索引拦截
+     * @param voucherOrders 订单列表
+     * @return java.util.List<java.lang.Long> 实际落库的订单id
+     * @author chenshanquan
+     * @date 2025/9/21
+     **/
+    @Override
+    @Transactional
+    public List<Long> createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        List<Long> persistedIds = new ArrayList<>(voucherOrders.size());
+        Map<Long, List<VoucherOrder>> ordersByVoucher = voucherOrders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId));
+        for (Map.Entry<Long, List<VoucherOrder>> entry : ordersByVoucher.entrySet()) {
+            Long voucherId = entry.getKey();
+            List<VoucherOrder> orders = entry.getValue();
+
+            // 多行插入，重复订单被唯一索引忽略
+            int inserted = getBaseMapper().insertBatchIgnore(orders);
+            if (inserted > 0) {
+                // 按实际插入的数量一次性扣减库存
+                boolean success = iSeckillVoucherService.update().setSql("stock = stock - " + inserted)
+                        .eq("voucher_id", voucherId).ge("stock", inserted).update();
+                if (!success) {
+                    // 与Redis库存不一致，回滚整批，消息留在pending-list中重试
+                    throw new IllegalStateException("库存不足，优惠券ID: " + voucherId);
+                }
+            }
+
+            List<Long> orderIds = orders.stream().map(VoucherOrder::getId).collect(Collectors.toList());
+            if (inserted == orders.size()) {
+                persistedIds.addAll(orderIds);
+                continue;
+            }
+            // 存在未插入的订单：重复下单，或者已提交的批次在确认前重新投递，按订单id查询已落库的订单
+            log.warn("存在未插入的订单，优惠券ID: {}，数量: {}", voucherId, orders.size() - inserted);
+            query().select("id").in("id", orderIds).list().forEach(order -> persistedIds.add(order.getId()));
+        }
+        return persistedIds;
+    }
+
+    /**
+     * 批量取消超时未支付的订单，并归还数据库库存，同一个事务中完成
+     * 只取消仍为未支付状态的订单，加行锁避免与支付并发；此前已取消的订单一并返回，
+     * 由调用方归还可能因宕机尚未归还的Redis库存
+     * @param orderIds 订单id
+     * @return java.util.List<com.hmdp.entity.VoucherOrder> 已取消的订单
+     * @author chenshanquan
+     * @date 2025/10/4
+     **/
+    @Override
+    @Transactional
+    public List<VoucherOrder> cancelUnpaidOrders(List<Long> orderIds) {
+        List<VoucherOrder> orders = query().select("id", "user_id", "voucher_id", "status").in("id", orderIds)
+                .in("status", ORDER_STATUS_UNPAID, ORDER_STATUS_CANCELLED).last("for update").list();
+        List<VoucherOrder> unpaidOrders = orders.stream()
+                .filter(order -> order.getStatus() == ORDER_STATUS_UNPAID).collect(Collectors.toList());
+        if (unpaidOrders.isEmpty()) {
+            return orders;
+        }
+        update().set("status", ORDER_STATUS_CANCELLED)
+                .in("id", unpaidOrders.stream().map(VoucherOrder::getId).collect(Collectors.toList()))
+                .eq("status", ORDER_STATUS_UNPAID).update();
+        // 按优惠券一次性归还库存
+        Map<Long, Long> countByVoucher = unpaidOrders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        for (Map.Entry<Long, Long> entry : countByVoucher.entrySet()) {
+            iSeckillVoucherService.update().setSql("stock = stock + " + entry.getValue())
+                    .eq("voucher_id", entry.getKey()).update();
+        }
+        return orders;
+    }
+
     /**
      * 抢购秒杀券-v3
      * @param voucherId 优惠券id
@@ -262,27 +205,183 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
      **/
     @Override
     public Result seckillVoucher(Long voucherId) {
+        // stream模式：订单消息队列积压过多，快速失败，避免继续加深积压
+        OrderStreamMonitor orderStreamMonitor = orderStreamMonitorProvider.getIfAvailable();
+        if (orderStreamMonitor != null && orderStreamMonitor.isOverloaded()) {
+            return Result.fail("系统繁忙，请稍后重试");
+        }
+        // 本地已标记售罄，直接拒绝，不访问Redis
+        if (soldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
         UserDTO user = UserHolder.getUser();
-        long orderId = redisIdWorker.nextId("order");
-        // 执行脚本
-        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
-                // 空keys
-                Collections.emptyList(),
+        // 启用排队室的优惠券只允许已放行的用户抢购，未放行的请求不执行秒杀脚本
+        if (!seckillWaitingRoom.canEnter(voucherId, user.getId())) {
+            return Result.fail(seckillFailMessage(7));
+        }
+        // 本地没有准入许可，直接拒绝，不访问Redis
+        SeckillPermitGate.Admission admission = seckillPermitGate.tryAcquire(voucherId);
+        if (admission == SeckillPermitGate.Admission.REJECTED) {
+            return Result.fail("抢购人数过多，请稍后重试");
+        }
+        long orderId;
+        Long result;
+        try {
+            orderId = redisIdWorker.nextId("order");
+            // 执行脚本，一次往返完成时间窗口、库存和重复下单校验
+            // 秒杀券在创建、启动或管理接口中预热，未预热时返回5，按不存在处理，不在下单路径上查询数据库
+            result = executeSeckillScript(voucherId, user.getId(), orderId);
+        } catch (RuntimeException e) {
+            releasePermit(voucherId, admission);
+            throw e;
+        }
+        if (result.intValue() != 0) {
+            if (result == 1) {
+                // 售罄后标记到本地并通知其他节点，售罄的请求消耗许可
+                soldOutRegistry.markSoldOut(voucherId);
+            } else {
+                // 重复下单、未开始、限流等请求没有占用库存，归还许可
+                releasePermit(voucherId, admission);
+            }
+            return Result.fail(seckillFailMessage(result.intValue()));
+        }
+        // 售罄标记的复查请求抢购成功，说明错过了补货消息
+        soldOutRegistry.markAvailable(voucherId);
+
+        // local模式：订单写入本地队列，写入失败时归还库存，许可随库存一起归还到Redis
+        LocalOrderQueue localOrderQueue = localOrderQueueProvider.getIfAvailable();
+        if (localOrderQueue != null) {
+            VoucherOrder voucherOrder = new VoucherOrder();
+            voucherOrder.setId(orderId).setUserId(user.getId()).setVoucherId(voucherId);
+            if (!localOrderQueue.offer(voucherOrder)) {
+                iVoucherService.releaseSeckillStock(voucherId, Collections.singletonList(user.getId()));
+                orderStatusTracker.markFailed(orderId, "订单队列已满");
+                return Result.fail("系统繁忙，请稍后重试");
+            }
+        }
+
+        // 返回order的id
+        return Result.ok(orderId);
+    }
+
+    /**
+     * 将死信队列中的订单重新投递到订单消息队列
+     * @param count 重新投递的数量
+     * @return int 实际重新投递的数量
+     * @author chenshanquan
+     * @date 2025/9/27
+     **/
+    @Override
+    public int replayDeadLetterOrders(int count) {
+        return orderDeadLetterQueue.replay(count);
+    }
+
+    /**
+     * 查询订单状态，只读取Redis中的状态记录
+     * @param orderId 订单id
+     * @return com.hmdp.dto.Result
+     * @author chenshanquan
+     * @date 2025/9/30
+     **/
+    @Override
+    public Result queryOrderStatus(Long orderId) {
+        OrderStatusDTO orderStatus = orderStatusTracker.get(orderId);
+        if (orderStatus == null) {
+            return Result.fail("订单不存在或状态已过期");
+        }
+        return Result.ok(orderStatus);
+    }
+
+    /**
+     * 加入秒杀排队室
+     * @param voucherId 优惠券id
+     * @return com.hmdp.dto.Result 排队票据
+     * @author chenshanquan
+     * @date 2025/10/3
+     **/
+    @Override
+    public Result joinWaitingRoom(Long voucherId) {
+        WaitingTicketDTO ticket = seckillWaitingRoom.join(voucherId, UserHolder.getUser().getId());
+        if (ticket == null) {
+            return Result.fail("该优惠券不需要排队或秒杀已结束");
+        }
+        return Result.ok(ticket);
+    }
+
+    /**
+     * 查询排队进度
+     * @param voucherId 优惠券id
+     * @return com.hmdp.dto.Result 排队票据
+     * @author chenshanquan
+     * @date 2025/10/3
+     **/
+    @Override
+    public Result queryWaitingRoom(Long voucherId) {
+        WaitingTicketDTO ticket = seckillWaitingRoom.query(voucherId, UserHolder.getUser().getId());
+        if (ticket == null) {
+            return Result.fail("尚未排队");
+        }
+        return Result.ok(ticket);
+    }
+
+    /**
+     * 执行秒杀脚本
+     * @param voucherId 优惠券id
+     * @param userId 用户id
+     * @param orderId 订单id
+     * @return java.lang.Long 0：成功；1：库存不足；2：重复下单；3：未开始；4：已结束；5：未预热；6：限流
+     * @author chenshanquan
+     * @date 2025/9/24
+     **/
+    private Long executeSeckillScript(Long voucherId, Long userId, long orderId) {
+        // DefaultRedisScript会优先使用EVALSHA执行
+        String bucketKey = SECKILL_BUCKET_KEY + voucherId;
+        return stringRedisTemplate.execute(SECKILL_SCRIPT,
+                // 脚本访问的key：秒杀券、购买记录set、购买记录bitmap、订单状态、优惠券和用户令牌桶、订单消息队列
+                Arrays.asList(SECKILL_VOUCHER_KEY + voucherId, SECKILL_ORDER_KEY + voucherId,
+                        SECKILL_ORDER_BITMAP_KEY + voucherId, SECKILL_ORDER_STATUS_KEY + orderId, bucketKey,
+                        bucketKey + ":" + userId, seckillProperties.getStreamName()),
                 // 优惠券id
                 voucherId.toString(),
                 // 用户id
-                user.getId().toString(),
+                userId.toString(),
                 // 脚本新增订单id参数
-                String.valueOf(orderId));
-        if (result.intValue() != 0) {
-            return Result.fail(result == 1 ? "库存不足" : "不能重复下单");
-        }
+                String.valueOf(orderId),
+                // 当前时间，用于校验秒杀时间窗口
+                String.valueOf(System.currentTimeMillis()),
+                // bitmap记录购买用户的最大用户id
+                String.valueOf(seckillProperties.getDedupeBitmapMaxUserId()),
+                // 购买记录在秒杀结束后的保留时间
+                String.valueOf(seckillProperties.getOrderRetainMillis()),
+                // 订单状态记录的保留时间
+                String.valueOf(seckillProperties.getOrderStatusTtlMillis()),
+                // 是否发送到stream消息队列
+                "local".equals(seckillProperties.getQueueMode()) ? "0" : "1");
+    }
 
-        // 获取代理对象
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
+    private void releasePermit(Long voucherId, SeckillPermitGate.Admission admission) {
+        if (admission == SeckillPermitGate.Admission.ACQUIRED) {
+            seckillPermitGate.release(voucherId);
+        }
+    }
 
-        // 返回order的id
-        return Result.ok(orderId);
+    private String seckillFailMessage(int result) {
+        switch (result) {
+            case 1:
+                return "库存不足";
+            case 2:
+                return "不能重复下单";
+            case 3:
+                return "秒杀尚未开始";
+            case 4:
+                return "秒杀已结束";
+            case 6:
+                return "抢购人数过多，请稍后重试";
+            case 7:
+                return "尚未获得抢购资格，请先排队";
+            default:
+                return "优惠券不存在";
+        }
     }
 
     /**
@@ -1,21 +1,51 @@
 package com.hmdp.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.config.SeckillProperties;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.HmdpCacheEvict;
+import com.hmdp.utils.HmdpCacheable;
+import com.hmdp.utils.SoldOutRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.framework.AopContext;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_VOUCHER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_VOUCHER_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_BITMAP_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_TIMEOUT_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_PERMITS_KEY;
 import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_KEY;
 
 /**
  * <p>
@@ -24,6 +54,7 @@ import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
@@ -34,16 +65,48 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    // 购买记录迁移时每批处理的用户数
+    private static final int MIGRATE_BATCH_SIZE = 1000;
+
+    private static final DefaultRedisScript<Long> TIMEOUT_RELEASE_SCRIPT;
+
+    static {
+        TIMEOUT_RELEASE_SCRIPT = new DefaultRedisScript<>();
+        TIMEOUT_RELEASE_SCRIPT.setLocation(new ClassPathResource("timeout_release.lua"));
+        TIMEOUT_RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        List<Voucher> vouchers = ((IVoucherService) AopContext.currentProxy()).queryVoucherListOfShop(shopId);
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    /**
+     * 查询店铺的优惠券，包含秒杀库存，缓存时间较短
+     * @param shopId 店铺id
+     * @return java.util.List<com.hmdp.entity.Voucher>
+     * @author chenshanquan
+     * @date 2025/10/9
+     **/
+    @Override
+    @HmdpCacheable(prefix = CACHE_SHOP_VOUCHER_KEY, key = "#shopId", ttl = CACHE_SHOP_VOUCHER_TTL, jitter = 10,
+            timeUnit = TimeUnit.SECONDS)
+    public List<Voucher> queryVoucherListOfShop(Long shopId) {
+        return getBaseMapper().queryVoucherOfShop(shopId);
+    }
+
     @Override
     @Transactional
+    @HmdpCacheEvict(prefix = CACHE_SHOP_VOUCHER_KEY, key = "#voucher.shopId")
     public void addSeckillVoucher(Voucher voucher) {
         // 保存优惠券
         save(voucher);
@@ -54,7 +117,271 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        // 将优惠券存入Redis中
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        // 事务提交后再将优惠券存入Redis中，事务回滚时不会留下不存在的秒杀券的库存
+        afterCommit(() -> {
+            stringRedisTemplate.opsForHash().putAll(SECKILL_VOUCHER_KEY + voucher.getId(),
+                    buildVoucherMap(voucher.getStock(), voucher.getBeginTime(), voucher.getEndTime()));
+            writeAdmissionLimit(voucher);
+            // 初始化全局准入许可，超发部分只在创建时计算一次
+            stringRedisTemplate.opsForValue().set(SECKILL_PERMITS_KEY + voucher.getId(),
+                    String.valueOf(permitsOf(voucher.getStock())));
+        });
+    }
+
+    /**
+     * 将数据库中的秒杀券预热到Redis，由管理接口调用，用于预热功能上线前创建或Redis数据丢失的秒杀券
+     * 已有的Redis库存优先于数据库库存，数据库库存由异步下单延迟扣减
+     * @param voucherId 优惠券id
+     * @return boolean 秒杀券是否存在
+     * @author chenshanquan
+     * @date 2025/9/24
+     **/
+    @Override
+    public boolean preloadSeckillVoucher(Long voucherId) {
+        SeckillVoucher seckillVoucher = seckillVoucherService.getById(voucherId);
+        if (seckillVoucher == null) {
+            return false;
+        }
+        preload(seckillVoucher);
+        return true;
+    }
+
+    /**
+     * 应用启动后预热所有未结束的秒杀券，下单路径不再查询数据库预热，未预热的秒杀券按不存在处理
+     * @param
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/24
+     **/
+    @Override
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadSeckillVouchers() {
+        List<SeckillVoucher> seckillVouchers = seckillVoucherService.query()
+                .and(wrapper -> wrapper.isNull("end_time").or().gt("end_time", LocalDateTime.now())).list();
+        seckillVouchers.forEach(this::preload);
+        log.info("秒杀券预热完成，数量: {}", seckillVouchers.size());
+    }
+
+    private void preload(SeckillVoucher seckillVoucher) {
+        Long voucherId = seckillVoucher.getVoucherId();
+        String legacyStock = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_KEY + voucherId);
+        int stock = legacyStock == null ? seckillVoucher.getStock() : Integer.parseInt(legacyStock);
+        Map<String, String> voucherMap = buildVoucherMap(stock, seckillVoucher.getBeginTime(),
+                seckillVoucher.getEndTime());
+        // 多个节点可能同时预热，只写入不存在的字段，避免覆盖已经开始扣减的库存
+        for (Map.Entry<String, String> entry : voucherMap.entrySet()) {
+            stringRedisTemplate.opsForHash().putIfAbsent(SECKILL_VOUCHER_KEY + voucherId, entry.getKey(),
+                    entry.getValue());
+        }
+        // 按Redis中实际的库存计算许可，其他节点可能已经预热并开始扣减
+        Object currentStock = stringRedisTemplate.opsForHash().get(SECKILL_VOUCHER_KEY + voucherId, "stock");
+        stringRedisTemplate.opsForValue().setIfAbsent(SECKILL_PERMITS_KEY + voucherId,
+                String.valueOf(permitsOf(currentStock == null ? 0 : Integer.parseInt(currentStock.toString()))));
+    }
+
+    /**
+     * 秒杀券补货，同时增加数据库和Redis库存，并清除各节点的售罄标记
+     * Redis库存、准入许可和售罄标记在事务提交后再修改，事务回滚时不会放出数据库中不存在的库存；
+     * 与归还库存相同，许可按库存的变化量增加，超发部分只在创建时计算
+     * @param voucherId 优惠券id
+     * @param count 补货数量
+     * @return boolean
+     * @author chenshanquan
+     * @date 2025/9/23
+     **/
+    @Override
+    @Transactional
+    public boolean replenishSeckillStock(Long voucherId, int count) {
+        if (count <= 0) {
+            return false;
+        }
+        boolean success = seckillVoucherService.update().setSql("stock = stock + " + count)
+                .eq("voucher_id", voucherId).update();
+        if (!success) {
+            return false;
+        }
+        afterCommit(() -> {
+            stringRedisTemplate.opsForHash().increment(SECKILL_VOUCHER_KEY + voucherId, "stock", count);
+            // 启用了准入许可的优惠券同步增加许可
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(SECKILL_PERMITS_KEY + voucherId))) {
+                stringRedisTemplate.opsForValue().increment(SECKILL_PERMITS_KEY + voucherId, count);
+            }
+            soldOutRegistry.clearSoldOut(voucherId);
+        });
+        return true;
+    }
+
+    /**
+     * 将优惠券的购买记录从set迁移到bitmap，超出bitmap范围的用户id保留在set中
+     * 先写bitmap再从set中删除，迁移过程中用户始终至少存在于其中一个结构，不影响重复下单校验
+     * @param voucherId 优惠券id
+     * @return long 迁移的用户数
+     * @author chenshanquan
+     * @date 2025/9/25
+     **/
+    @Override
+    public long migrateSeckillOrderBitmap(Long voucherId) {
+        long maxUserId = seckillProperties.getDedupeBitmapMaxUserId();
+        if (maxUserId <= 0) {
+            return 0;
+        }
+        String orderKey = SECKILL_ORDER_KEY + voucherId;
+        String bitmapKey = SECKILL_ORDER_BITMAP_KEY + voucherId;
+        long migrated = 0;
+        List<String> batch = new ArrayList<>(MIGRATE_BATCH_SIZE);
+        try (Cursor<String> cursor = stringRedisTemplate.opsForSet().scan(orderKey,
+                ScanOptions.scanOptions().count(MIGRATE_BATCH_SIZE).build())) {
+            while (cursor.hasNext()) {
+                String userId = cursor.next();
+                if (Long.parseLong(userId) > maxUserId) {
+                    continue;
+                }
+                batch.add(userId);
+                if (batch.size() >= MIGRATE_BATCH_SIZE) {
+                    migrated += migrateOrderBatch(orderKey, bitmapKey, batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            migrated += migrateOrderBatch(orderKey, bitmapKey, batch);
+        }
+        // 保持与set相同的过期时间
+        Long ttl = stringRedisTemplate.getExpire(orderKey, TimeUnit.MILLISECONDS);
+        if (ttl != null && ttl > 0) {
+            stringRedisTemplate.expire(bitmapKey, ttl, TimeUnit.MILLISECONDS);
+        }
+        log.info("优惠券购买记录迁移完成，优惠券ID: {}，迁移用户数: {}", voucherId, migrated);
+        return migrated;
+    }
+
+    /**
+     * 归还未落库订单占用的Redis库存，并清除用户的购买记录，用户可以重新抢购
+     * 只用于订单没有写入数据库的场景，已落库的订单占用唯一索引(user_id, voucher_id)，清除购买记录会导致重新抢购时扣减库存但订单写入失败
+     * @param voucherId 优惠券id
+     * @param userIds 订单未落库的用户id
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/4
+     **/
+    @Override
+    public void releaseSeckillStock(Long voucherId, List<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        boolean permitted = Boolean.TRUE.equals(stringRedisTemplate.hasKey(SECKILL_PERMITS_KEY + voucherId));
+        long maxUserId = seckillProperties.getDedupeBitmapMaxUserId();
+        String orderKey = SECKILL_ORDER_KEY + voucherId;
+        String bitmapKey = SECKILL_ORDER_BITMAP_KEY + voucherId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.hIncrBy(SECKILL_VOUCHER_KEY + voucherId, "stock", userIds.size());
+            for (Long userId : userIds) {
+                if (maxUserId > 0 && userId <= maxUserId) {
+                    stringConnection.setBit(bitmapKey, userId, false);
+                }
+                stringConnection.sRem(orderKey, userId.toString());
+            }
+            if (permitted) {
+                stringConnection.incrBy(SECKILL_PERMITS_KEY + voucherId, userIds.size());
+            }
+            return null;
+        });
+        soldOutRegistry.clearSoldOut(voucherId);
+    }
+
+    /**
+     * 归还已取消订单占用的Redis库存，保留用户的购买记录，同时从超时订单ZSET中删除这些订单
+     * 取消的订单仍保留在数据库中并占用唯一索引，用户不能再次抢购同一张优惠券；数据库库存由取消订单的事务归还；
+     * 只归还仍在ZSET中的订单，取消后宕机重试时不会重复归还
+     * @param voucherId 优惠券id
+     * @param orderIds 已取消的订单id
+     * @return int 实际归还的库存数量
+     * @author chenshanquan
+     * @date 2025/10/4
+     **/
+    @Override
+    public int releaseCancelledStock(Long voucherId, List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        Long released = stringRedisTemplate.execute(TIMEOUT_RELEASE_SCRIPT,
+                Arrays.asList(SECKILL_ORDER_TIMEOUT_KEY, SECKILL_VOUCHER_KEY + voucherId, SECKILL_PERMITS_KEY + voucherId),
+                orderIds.stream().map(String::valueOf).toArray());
+        if (released == null || released <= 0) {
+            return 0;
+        }
+        soldOutRegistry.clearSoldOut(voucherId);
+        return released.intValue();
+    }
+
+    private int migrateOrderBatch(String orderKey, String bitmapKey, List<String> userIds) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String userId : userIds) {
+                stringConnection.setBit(bitmapKey, Long.parseLong(userId), true);
+            }
+            stringConnection.sRem(orderKey, userIds.toArray(new String[0]));
+            return null;
+        });
+        return userIds.size();
+    }
+
+    /**
+     * 写入秒杀券的准入配置：令牌桶在校验库存前按优惠券和用户两级限流，排队室只放行排到的用户，未配置时不限制
+     * @param voucher 优惠券
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/1
+     **/
+    private void writeAdmissionLimit(Voucher voucher) {
+        Map<String, String> limitMap = new HashMap<>(4);
+        Double rate = voucher.getAdmitRate();
+        if (rate != null && rate > 0) {
+            Integer burst = voucher.getAdmitBurst();
+            limitMap.put("rate", String.valueOf(rate));
+            limitMap.put("burst", String.valueOf(burst == null ? Math.max((int) Math.ceil(rate), 1) : burst));
+        }
+        Double userRate = voucher.getUserAdmitRate();
+        if (userRate != null && userRate > 0) {
+            Integer userBurst = voucher.getUserAdmitBurst();
+            limitMap.put("urate", String.valueOf(userRate));
+            limitMap.put("uburst", String.valueOf(userBurst == null ? 1 : userBurst));
+        }
+        if (Boolean.TRUE.equals(voucher.getWaitingRoom())) {
+            limitMap.put("room", "1");
+        }
+        if (!limitMap.isEmpty()) {
+            stringRedisTemplate.opsForHash().putAll(SECKILL_VOUCHER_KEY + voucher.getId(), limitMap);
+        }
+    }
+
+    /**
+     * 秒杀券的Redis信息：库存、开始时间、结束时间存入同一个hash，秒杀脚本一次读取即可完成时间窗口和库存校验
+     */
+    private Map<String, String> buildVoucherMap(int stock, LocalDateTime beginTime, LocalDateTime endTime) {
+        Map<String, String> voucherMap = new HashMap<>(4);
+        voucherMap.put("stock", String.valueOf(stock));
+        // 时间统一转为毫秒时间戳，0表示不限制
+        voucherMap.put("begin", String.valueOf(toEpochMilli(beginTime)));
+        voucherMap.put("end", String.valueOf(toEpochMilli(endTime)));
+        return voucherMap;
+    }
+
+    private void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private long permitsOf(int stock) {
+        return (long) Math.ceil(stock * seckillProperties.getPermitOverbookFactor());
+    }
+
+    private long toEpochMilli(LocalDateTime time) {
+        return time == null ? 0L : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 }
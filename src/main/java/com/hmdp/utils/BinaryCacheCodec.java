@@ -0,0 +1,442 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.entity.Voucher;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 二进制编码器
+ * 每种实体有固定的类型标记和字段顺序，按版本号读取，新增字段时递增版本号并保留旧版本的读取逻辑；
+ * 整数使用变长编码，时间按毫秒存储，集合和逻辑过期包装可以嵌套；只能编码已登记的类型
+ * @author chenshanquan
+ * @date 2025/10/10
+ **/
+@Component
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final byte ID = 2;
+
+    // 值的类型标记，已使用的标记不能修改
+    private static final int TAG_NULL = 0;
+    private static final int TAG_LIST = 1;
+    private static final int TAG_REDIS_DATA = 2;
+    private static final int TAG_SHOP = 16;
+    private static final int TAG_SHOP_TYPE = 17;
+    private static final int TAG_BLOG = 18;
+    private static final int TAG_USER = 19;
+    private static final int TAG_VOUCHER = 20;
+
+    private final Map<Class<?>, Schema<?>> schemasByClass = new HashMap<>();
+    private final Map<Integer, Schema<?>> schemasByTag = new HashMap<>();
+
+    public BinaryCacheCodec() {
+        register(new Schema<Shop>(Shop.class, TAG_SHOP, 1) {
+            @Override
+            void write(Shop shop, Output out) {
+                out.writeLong(shop.getId());
+                out.writeString(shop.getName());
+                out.writeLong(shop.getTypeId());
+                out.writeString(shop.getImages());
+                out.writeString(shop.getArea());
+                out.writeString(shop.getAddress());
+                out.writeDouble(shop.getX());
+                out.writeDouble(shop.getY());
+                out.writeLong(shop.getAvgPrice());
+                out.writeInt(shop.getSold());
+                out.writeInt(shop.getComments());
+                out.writeInt(shop.getScore());
+                out.writeString(shop.getOpenHours());
+                out.writeTime(shop.getCreateTime());
+                out.writeTime(shop.getUpdateTime());
+            }
+
+            @Override
+            Shop read(Input in, int version) {
+                return new Shop().setId(in.readLong()).setName(in.readString()).setTypeId(in.readLong())
+                        .setImages(in.readString()).setArea(in.readString()).setAddress(in.readString())
+                        .setX(in.readDouble()).setY(in.readDouble()).setAvgPrice(in.readLong())
+                        .setSold(in.readInt()).setComments(in.readInt()).setScore(in.readInt())
+                        .setOpenHours(in.readString()).setCreateTime(in.readTime()).setUpdateTime(in.readTime());
+            }
+        });
+        register(new Schema<ShopType>(ShopType.class, TAG_SHOP_TYPE, 1) {
+            @Override
+            void write(ShopType shopType, Output out) {
+                out.writeLong(shopType.getId());
+                out.writeString(shopType.getName());
+                out.writeString(shopType.getIcon());
+                out.writeInt(shopType.getSort());
+                out.writeTime(shopType.getCreateTime());
+                out.writeTime(shopType.getUpdateTime());
+            }
+
+            @Override
+            ShopType read(Input in, int version) {
+                return new ShopType().setId(in.readLong()).setName(in.readString()).setIcon(in.readString())
+                        .setSort(in.readInt()).setCreateTime(in.readTime()).setUpdateTime(in.readTime());
+            }
+        });
+        // 用户名称、头像和点赞标记按请求填充，不缓存
+        register(new Schema<Blog>(Blog.class, TAG_BLOG, 1) {
+            @Override
+            void write(Blog blog, Output out) {
+                out.writeLong(blog.getId());
+                out.writeLong(blog.getShopId());
+                out.writeLong(blog.getUserId());
+                out.writeString(blog.getTitle());
+                out.writeString(blog.getImages());
+                out.writeString(blog.getContent());
+                out.writeInt(blog.getLiked());
+                out.writeInt(blog.getComments());
+                out.writeTime(blog.getCreateTime());
+                out.writeTime(blog.getUpdateTime());
+            }
+
+            @Override
+            Blog read(Input in, int version) {
+                return new Blog().setId(in.readLong()).setShopId(in.readLong()).setUserId(in.readLong())
+                        .setTitle(in.readString()).setImages(in.readString()).setContent(in.readString())
+                        .setLiked(in.readInt()).setComments(in.readInt()).setCreateTime(in.readTime())
+                        .setUpdateTime(in.readTime());
+            }
+        });
+        register(new Schema<UserDTO>(UserDTO.class, TAG_USER, 1) {
+            @Override
+            void write(UserDTO user, Output out) {
+                out.writeLong(user.getId());
+                out.writeString(user.getNickName());
+                out.writeString(user.getIcon());
+            }
+
+            @Override
+            UserDTO read(Input in, int version) {
+                UserDTO user = new UserDTO();
+                user.setId(in.readLong());
+                user.setNickName(in.readString());
+                user.setIcon(in.readString());
+                return user;
+            }
+        });
+        // 只缓存查询结果中的字段，秒杀准入配置只在新增秒杀券时使用
+        register(new Schema<Voucher>(Voucher.class, TAG_VOUCHER, 1) {
+            @Override
+            void write(Voucher voucher, Output out) {
+                out.writeLong(voucher.getId());
+                out.writeLong(voucher.getShopId());
+                out.writeString(voucher.getTitle());
+                out.writeString(voucher.getSubTitle());
+                out.writeString(voucher.getRules());
+                out.writeLong(voucher.getPayValue());
+                out.writeLong(voucher.getActualValue());
+                out.writeInt(voucher.getType());
+                out.writeInt(voucher.getStatus());
+                out.writeInt(voucher.getStock());
+                out.writeTime(voucher.getBeginTime());
+                out.writeTime(voucher.getEndTime());
+                out.writeTime(voucher.getCreateTime());
+                out.writeTime(voucher.getUpdateTime());
+            }
+
+            @Override
+            Voucher read(Input in, int version) {
+                return new Voucher().setId(in.readLong()).setShopId(in.readLong()).setTitle(in.readString())
+                        .setSubTitle(in.readString()).setRules(in.readString()).setPayValue(in.readLong())
+                        .setActualValue(in.readLong()).setType(in.readInt()).setStatus(in.readInt())
+                        .setStock(in.readInt()).setBeginTime(in.readTime()).setEndTime(in.readTime())
+                        .setCreateTime(in.readTime()).setUpdateTime(in.readTime());
+            }
+        });
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "binary";
+    }
+
+    @Override
+    public boolean canEncode(Object value) {
+        if (value == null) {
+            return true;
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!canEncode(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof RedisData) {
+            return canEncode(((RedisData<?>) value).getData());
+        }
+        return schemasByClass.containsKey(value.getClass());
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Output out = new Output();
+        writeValue(value, out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] bytes, Type type) {
+        Input in = new Input(bytes);
+        try {
+            return readValue(in);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalStateException("缓存数据不完整", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Object value, Output out) {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(TAG_LIST);
+            out.writeVarLong(list.size());
+            for (Object element : list) {
+                writeValue(element, out);
+            }
+        } else if (value instanceof RedisData) {
+            RedisData<?> redisData = (RedisData<?>) value;
+            out.writeByte(TAG_REDIS_DATA);
+            out.writeTime(redisData.getExpireTime());
+            writeValue(redisData.getData(), out);
+        } else {
+            Schema<Object> schema = (Schema<Object>) schemasByClass.get(value.getClass());
+            if (schema == null) {
+                throw new IllegalArgumentException("未登记二进制编码的类型: " + value.getClass().getName());
+            }
+            out.writeByte(schema.tag);
+            out.writeByte(schema.version);
+            schema.write(value, out);
+        }
+    }
+
+    private Object readValue(Input in) {
+        int tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_LIST:
+                int size = (int) in.readVarLong();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            case TAG_REDIS_DATA:
+                RedisData<Object> redisData = new RedisData<>();
+                redisData.setExpireTime(in.readTime());
+                redisData.setData(readValue(in));
+                return redisData;
+            default:
+                Schema<?> schema = schemasByTag.get(tag);
+                if (schema == null) {
+                    throw new IllegalStateException("未知的类型标记: " + tag);
+                }
+                int version = in.readByte();
+                if (version > schema.version) {
+                    throw new IllegalStateException("不支持的" + schema.type.getSimpleName() + "编码版本: " + version);
+                }
+                return schema.read(in, version);
+        }
+    }
+
+    private void register(Schema<?> schema) {
+        schemasByClass.put(schema.type, schema);
+        schemasByTag.put(schema.tag, schema);
+    }
+
+    /**
+     * 一种实体的编码格式
+     */
+    private abstract static class Schema<T> {
+        private final Class<T> type;
+        private final int tag;
+        // 当前写入的版本号
+        private final int version;
+
+        Schema(Class<T> type, int tag, int version) {
+            this.type = type;
+            this.tag = tag;
+            this.version = version;
+        }
+
+        abstract void write(T value, Output out);
+
+        /**
+         * 按写入时的版本号读取
+         */
+        abstract T read(Input in, int version);
+    }
+
+    /**
+     * 可空字段的编码：字符串写长度加1，整数写zigzag变长编码加1，0表示null；长整数和浮点数先写一个是否为null的字节
+     */
+    private static final class Output {
+        private byte[] buffer = new byte[256];
+        private int size;
+
+        void writeByte(int value) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size << 1);
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeInt(Integer value) {
+            writeVarLong(value == null ? 0 : ((long) value << 1 ^ (long) value >> 63) + 1);
+        }
+
+        void writeLong(Long value) {
+            if (value == null) {
+                writeByte(0);
+                return;
+            }
+            writeByte(1);
+            writeVarLong(value << 1 ^ value >> 63);
+        }
+
+        void writeDouble(Double value) {
+            if (value == null) {
+                writeByte(0);
+                return;
+            }
+            writeByte(1);
+            long bits = Double.doubleToLongBits(value);
+            for (int i = 56; i >= 0; i -= 8) {
+                writeByte((int) (bits >>> i));
+            }
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            if (size + bytes.length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, size + bytes.length));
+            }
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        /**
+         * 时间按UTC换算为毫秒，与节点时区无关
+         */
+        void writeTime(LocalDateTime value) {
+            writeLong(value == null ? null : value.toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readByte() {
+            if (position >= buffer.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        Integer readInt() {
+            long value = readVarLong();
+            if (value == 0) {
+                return null;
+            }
+            value--;
+            return (int) (value >>> 1 ^ -(value & 1));
+        }
+
+        Long readLong() {
+            if (readByte() == 0) {
+                return null;
+            }
+            long value = readVarLong();
+            return value >>> 1 ^ -(value & 1);
+        }
+
+        Double readDouble() {
+            if (readByte() == 0) {
+                return null;
+            }
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = bits << 8 | readByte();
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readString() {
+            long length = readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            int bytes = (int) (length - 1);
+            if (position + bytes > buffer.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            String value = new String(buffer, position, bytes, StandardCharsets.UTF_8);
+            position += bytes;
+            return value;
+        }
+
+        LocalDateTime readTime() {
+            Long millis = readLong();
+            return millis == null ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.hmdp.utils;
+
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.Ordered;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 缓存注解的切面，按注解选择的策略调用CacheUtil
+ * 优先级高于事务切面，删除缓存发生在事务提交之后；
+ * 逻辑过期策略的方法只能以数据id为唯一参数，重建和提前刷新在后台线程中按id直接调用目标对象的方法，不保留请求的连接点
+ * @author chenshanquan
+ * @date 2025/10/9
+ **/
+@Aspect
+@Component
+@RequiredArgsConstructor
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CacheAspect {
+
+    private static final ExpressionParser PARSER = new SpelExpressionParser();
+    private static final ParameterNameDiscoverer NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    private final CacheUtil cacheUtil;
+    private final HotKeyTracker hotKeyTracker;
+
+    // 解析后的key表达式
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+    // 逻辑过期方法 -> 按id查询数据库
+    private final Map<Method, Function<Object, Object>> loaders = new ConcurrentHashMap<>();
+
+    @Around("@annotation(cacheable)")
+    public Object cacheable(ProceedingJoinPoint joinPoint, HmdpCacheable cacheable) {
+        Method method = targetMethod(joinPoint);
+        // 使用表达式的原始值作为id，与批量查询登记的id类型一致
+        Object id = evaluateKey(cacheable.key(), method, joinPoint);
+        if (id == null) {
+            throw new IllegalArgumentException("缓存key表达式的值为null: " + cacheable.key() + "，方法: " + method);
+        }
+        // 过期时间加上随机增量，统一换算为毫秒
+        long ttlMillis = cacheable.timeUnit().toMillis(cacheable.ttl());
+        if (cacheable.jitter() > 0) {
+            ttlMillis += ThreadLocalRandom.current().nextLong(cacheable.timeUnit().toMillis(cacheable.jitter()) + 1);
+        }
+        Function<Object, Object> dbFallback = ignored -> proceed(joinPoint);
+        switch (cacheable.strategy()) {
+            case MUTEX:
+                return cacheUtil.getWithMutex(cacheable.prefix(), id, method.getGenericReturnType(), dbFallback,
+                        ttlMillis, TimeUnit.MILLISECONDS);
+            case LOGICAL_EXPIRE:
+                return cacheUtil.getWithLogicalExpire(cacheable.prefix(), id, method.getGenericReturnType(),
+                        loaderOf(cacheable.prefix(), method, joinPoint, id), ttlMillis, TimeUnit.MILLISECONDS);
+            default:
+                return cacheUtil.getWithPassThrough(cacheable.prefix(), id, method.getGenericReturnType(), dbFallback,
+                        ttlMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @AfterReturning("@annotation(cacheEvict)")
+    public void cacheEvict(JoinPoint joinPoint, HmdpCacheEvict cacheEvict) {
+        Object id = evaluateKey(cacheEvict.key(), targetMethod(joinPoint), joinPoint);
+        // key为null说明方法没有操作具体数据，不需要删除
+        if (id != null) {
+            cacheUtil.evict(cacheEvict.prefix() + id);
+        }
+    }
+
+    private Object evaluateKey(String key, Method method, JoinPoint joinPoint) {
+        Expression expression = expressions.computeIfAbsent(key, PARSER::parseExpression);
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, joinPoint.getArgs(),
+                NAME_DISCOVERER);
+        return expression.getValue(context);
+    }
+
+    /**
+     * 逻辑过期方法按id查询数据库的方法：第一次调用时创建并登记到HotKeyTracker，只持有目标对象和方法
+     * 直接调用目标对象，不经过其他切面
+     */
+    private Function<Object, Object> loaderOf(String prefix, Method method, JoinPoint joinPoint, Object id) {
+        Object[] args = joinPoint.getArgs();
+        if (args.length != 1 || !id.equals(args[0])) {
+            throw new IllegalArgumentException("逻辑过期策略的方法只能以缓存key为唯一参数，方法: " + method);
+        }
+        return loaders.computeIfAbsent(method, key -> {
+            Object target = joinPoint.getTarget();
+            ReflectionUtils.makeAccessible(method);
+            Function<Object, Object> loader = arg -> invoke(target, method, arg);
+            hotKeyTracker.registerLoader(prefix, loader);
+            return loader;
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object arg) {
+        try {
+            return method.invoke(target, arg);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getTargetException();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Method targetMethod(JoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        return AopUtils.getMostSpecificMethod(method, joinPoint.getTarget().getClass());
+    }
+
+    private Object proceed(ProceedingJoinPoint joinPoint) {
+        try {
+            return joinPoint.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.hmdp.utils;
+
+import java.lang.reflect.Type;
+
+/**
+ * 缓存值的编码器，由CacheCodecs选择编码器并加上格式头
+ * @author chenshanquan
+ * @date 2025/10/10
+ **/
+public interface CacheCodec {
+
+    /**
+     * 编码器标识，写入缓存值的格式头，已使用的标识不能修改
+     */
+    byte id();
+
+    /**
+     * 编码器名称，对应hmdp.cache.codec配置
+     */
+    String name();
+
+    /**
+     * 是否能编码该值，不能编码时使用JSON编码
+     */
+    boolean canEncode(Object value);
+
+    byte[] encode(Object value);
+
+    /**
+     * 解码
+     * @param bytes 编码后的数据，不含格式头
+     * @param type 数据的类型，自描述的编码器可以忽略
+     * @return java.lang.Object
+     */
+    Object decode(byte[] bytes, Type type);
+}
@@ -0,0 +1,140 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 缓存编码层
+ * 缓存值的格式为 魔数(1) + 编码器标识(1) + 标志位(1) + 数据，超过阈值的数据压缩后存储；
+ * 写入使用配置的编码器，该编码器不支持的类型使用JSON；读取按格式头选择编码器，没有格式头的旧数据按JSON读取
+ * @author chenshanquan
+ * @date 2025/10/10
+ **/
+@Component
+@RequiredArgsConstructor
+public class CacheCodecs {
+
+    private static final byte MAGIC = (byte) 0xCA;
+    private static final int HEADER_BYTES = 3;
+    private static final int FLAG_COMPRESSED = 1;
+
+    private final List<CacheCodec> codecs;
+    private final JsonCacheCodec jsonCacheCodec;
+    private final CacheProperties cacheProperties;
+
+    private final Map<Byte, CacheCodec> codecsById = new HashMap<>();
+    private CacheCodec preferred;
+
+    @PostConstruct
+    public void init() {
+        for (CacheCodec codec : codecs) {
+            if (codecsById.put(codec.id(), codec) != null) {
+                throw new IllegalStateException("缓存编码器标识重复: " + codec.id());
+            }
+            if (codec.name().equals(cacheProperties.getCodec())) {
+                preferred = codec;
+            }
+        }
+        if (preferred == null) {
+            throw new IllegalStateException("未知的缓存编码器: " + cacheProperties.getCodec());
+        }
+    }
+
+    /**
+     * 编码缓存值
+     * @param value 缓存值
+     * @return byte[]
+     * @author chenshanquan
+     * @date 2025/10/10
+     **/
+    public byte[] encode(Object value) {
+        CacheCodec codec = preferred.canEncode(value) ? preferred : jsonCacheCodec;
+        byte[] payload = codec.encode(value);
+        int flags = 0;
+        if (payload.length >= cacheProperties.getCompressThreshold()) {
+            byte[] compressed = compress(payload);
+            // 压缩后没有变小的数据不压缩
+            if (compressed.length < payload.length) {
+                payload = compressed;
+                flags |= FLAG_COMPRESSED;
+            }
+        }
+        byte[] bytes = new byte[HEADER_BYTES + payload.length];
+        bytes[0] = MAGIC;
+        bytes[1] = codec.id();
+        bytes[2] = (byte) flags;
+        System.arraycopy(payload, 0, bytes, HEADER_BYTES, payload.length);
+        return bytes;
+    }
+
+    /**
+     * 解码缓存值
+     * @param bytes 缓存值，不能为空
+     * @param type 数据的类型
+     * @return java.lang.Object
+     * @author chenshanquan
+     * @date 2025/10/10
+     **/
+    public Object decode(byte[] bytes, Type type) {
+        if (bytes[0] != MAGIC) {
+            return jsonCacheCodec.decode(bytes, type);
+        }
+        CacheCodec codec = codecsById.get(bytes[1]);
+        if (codec == null) {
+            throw new IllegalStateException("未知的缓存编码器标识: " + bytes[1]);
+        }
+        byte[] payload = (bytes[2] & FLAG_COMPRESSED) != 0
+                ? decompress(bytes, HEADER_BYTES)
+                : Arrays.copyOfRange(bytes, HEADER_BYTES, bytes.length);
+        return codec.decode(payload, type);
+    }
+
+    private static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] data, int offset) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, data.length - offset);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((data.length - offset) * 3);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("缓存数据不完整");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("缓存数据解压失败", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
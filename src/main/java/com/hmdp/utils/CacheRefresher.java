@@ -0,0 +1,57 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 热点key提前刷新
+ * 定期从HotKeyTracker取出即将逻辑过期的热点key，按前缀分批交给CacheUtil批量查询数据库并写回，
+ * 热点key的读请求不再遇到逻辑过期；多个节点同时刷新时由重建锁保证每个key只刷新一次
+ * @author chenshanquan
+ * @date 2025/10/12
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CacheRefresher {
+
+    private final HotKeyTracker hotKeyTracker;
+    private final CacheUtil cacheUtil;
+    private final CacheProperties cacheProperties;
+
+    /**
+     * 定时刷新即将逻辑过期的热点key
+     * @param
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/12
+     **/
+    @Scheduled(fixedDelayString = "${hmdp.cache.refresh-interval-millis:1000}")
+    public void refreshHotKeys() {
+        if (!cacheProperties.isRefreshEnabled()) {
+            return;
+        }
+        Map<String, List<HotKeyTracker.HotKey>> due = hotKeyTracker.collectDue(
+                System.currentTimeMillis() + cacheProperties.getRefreshAheadMillis(),
+                cacheProperties.getRefreshHotThreshold());
+        int batchSize = cacheProperties.getRefreshBatchSize();
+        for (Map.Entry<String, List<HotKeyTracker.HotKey>> entry : due.entrySet()) {
+            List<HotKeyTracker.HotKey> hotKeys = entry.getValue();
+            for (int from = 0; from < hotKeys.size(); from += batchSize) {
+                List<HotKeyTracker.HotKey> batch = hotKeys.subList(from, Math.min(from + batchSize, hotKeys.size()));
+                try {
+                    cacheUtil.refreshAhead(entry.getKey(), batch, hotKeyTracker.loaderOf(entry.getKey(), batch));
+                } catch (Exception e) {
+                    batch.forEach(HotKeyTracker.HotKey::finishRefresh);
+                    log.error("提交热点key提前刷新异常，前缀: {}，{}", entry.getKey(), e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存读取策略，对应CacheUtil中的三种读取方法
+ * @author chenshanquan
+ * @date 2025/10/9
+ **/
+public enum CacheStrategy {
+
+    /**
+     * 缓存空值解决缓存穿透
+     */
+    PASS_THROUGH,
+
+    /**
+     * 互斥锁解决缓存击穿
+     */
+    MUTEX,
+
+    /**
+     * 逻辑过期解决缓存击穿，热点key在逻辑过期前提前刷新，长时间未访问的key物理过期，未命中时查询数据库后写入
+     */
+    LOGICAL_EXPIRE
+}
@@ -1,20 +1,49 @@
 package com.hmdp.utils;
 
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 
-import com.alibaba.fastjson.JSONObject;
 import com.alibaba.fastjson.TypeReference;
+import com.hmdp.config.CacheProperties;
 
-import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -26,51 +55,158 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class CacheUtil {
 
+	// 释放锁的脚本，只删除自己持有的锁
+	private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+
+	static {
+		UNLOCK_SCRIPT = new DefaultRedisScript<>();
+		UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+		UNLOCK_SCRIPT.setResultType(Long.class);
+	}
+
+	// 缓存的空值
+	private static final byte[] EMPTY = new byte[0];
+
 	private final StringRedisTemplate stringRedisTemplate;
-	// 线程池
-	private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(1);
+	// 缓存值读写，值由CacheCodecs编码
+	private final RedisTemplate<String, byte[]> cacheRedisTemplate;
+	private final CacheCodecs cacheCodecs;
+	// 本地一级缓存
+	private final LocalCache localCache;
+	private final CacheProperties cacheProperties;
+	private final MeterRegistry meterRegistry;
+	// 逻辑过期key的访问统计，用于提前刷新热点key
+	private final HotKeyTracker hotKeyTracker;
+	// 互斥锁重试间隔和次数，总时长与锁的有效期一致
+	private static final long MUTEX_RETRY_MILLIS = 30;
+	private static final int MUTEX_MAX_RETRIES = 100;
+	// 正在加载的key，同一个key的并发未命中共享一次加载
+	private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+	// 所有逻辑过期key共享的重建线程池，队列有界，队列满时放弃重建
+	private ThreadPoolExecutor rebuildExecutor;
+	private Counter rebuildSuccessCounter;
+	private Counter rebuildFailureCounter;
+	private Counter rebuildRejectedCounter;
+	private Timer rebuildTimer;
+	private Counter refreshCounter;
+
+	@PostConstruct
+	public void init() {
+		int threads = cacheProperties.getRebuildThreads();
+		rebuildExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(cacheProperties.getRebuildQueueCapacity()),
+				ThreadFactoryBuilder.create().setNamePrefix("cache-rebuild-").build(),
+				new ThreadPoolExecutor.AbortPolicy());
+		rebuildExecutor.allowCoreThreadTimeOut(true);
+
+		Gauge.builder("cache.rebuild.active", rebuildExecutor, ThreadPoolExecutor::getActiveCount)
+				.description("正在执行的缓存重建任务数").register(meterRegistry);
+		Gauge.builder("cache.rebuild.queue", rebuildExecutor, executor -> executor.getQueue().size())
+				.description("等待执行的缓存重建任务数").register(meterRegistry);
+		rebuildSuccessCounter = Counter.builder("cache.rebuild").tag("result", "success")
+				.description("缓存重建次数").register(meterRegistry);
+		rebuildFailureCounter = Counter.builder("cache.rebuild").tag("result", "failure")
+				.description("缓存重建次数").register(meterRegistry);
+		rebuildRejectedCounter = Counter.builder("cache.rebuild").tag("result", "rejected")
+				.description("缓存重建次数").register(meterRegistry);
+		rebuildTimer = Timer.builder("cache.rebuild.duration").description("缓存重建耗时").register(meterRegistry);
+		refreshCounter = Counter.builder("cache.refresh").description("提前刷新的热点key数量").register(meterRegistry);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		rebuildExecutor.shutdown();
+	}
 
 	public void set(String key, Object value, Long time, TimeUnit timeUnit) {
-		stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, timeUnit);
+		cacheRedisTemplate.opsForValue().set(key, cacheCodecs.encode(value), time, timeUnit);
 	}
 
 	/**
-	 * 逻辑过期缓存
+	 * 逻辑过期缓存，逻辑过期后再保留cold-retain-millis，期间没有被访问的冷数据物理过期
 	 */
 	public <T> void setWithLogicalExpire(String key, T value, Long time, TimeUnit timeUnit) {
+		writeWithLogicalExpire(key, value, timeUnit.toMillis(time));
+	}
 
+	private <T> RedisData<T> writeWithLogicalExpire(String key, T value, long ttlMillis) {
 		RedisData<T> redisData = new RedisData<>();
 		redisData.setData(value);
-		redisData.setExpireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(time)));
-		stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+		redisData.setExpireTime(LocalDateTime.now().plus(ttlMillis, ChronoUnit.MILLIS));
+		cacheRedisTemplate.opsForValue().set(key, cacheCodecs.encode(redisData), physicalTtlMillis(ttlMillis),
+				TimeUnit.MILLISECONDS);
+		return redisData;
+	}
+
+	/**
+	 * 逻辑过期key的物理过期时间
+	 */
+	private long physicalTtlMillis(long ttlMillis) {
+		return ttlMillis + cacheProperties.getColdRetainMillis();
+	}
+
+	/**
+	 * 删除缓存，同时通知所有节点失效本地缓存
+	 */
+	public void evict(String key) {
+		cacheRedisTemplate.delete(key);
+		localCache.evict(key);
 	}
 
 	public <T> T get(String key, Class<T> type) {
-		String value = stringRedisTemplate.opsForValue().get(key);
-		return value == null ? null : JSONUtil.toBean(value, type);
+		Object value = read(key, type);
+		return value == LocalCache.NULL ? null : type.cast(value);
+	}
+
+	/**
+	 * 读取并解码缓存值，无法解码的值（如更高版本的节点写入的格式）按未命中处理
+	 * @return 未命中返回null，缓存的空值返回LocalCache.NULL
+	 */
+	private Object read(String key, Type type) {
+		return decode(key, cacheRedisTemplate.opsForValue().get(key), type);
+	}
+
+	private Object decode(String key, byte[] bytes, Type type) {
+		if (bytes == null) {
+			return null;
+		}
+		if (bytes.length == 0) {
+			return LocalCache.NULL;
+		}
+		try {
+			Object value = cacheCodecs.decode(bytes, type);
+			return value == null ? LocalCache.NULL : value;
+		} catch (RuntimeException e) {
+			log.warn("缓存值解码失败，按未命中处理，key: {}，{}", key, e.getMessage());
+			return null;
+		}
 	}
 
 	/**
 	 * 存储空值解决缓存穿透
 	 */
-	public <T, ID> T getWithPassThrough(String prefix, ID id, Class<T> type, Function<ID, T> dbFallback, Long time,
+	@SuppressWarnings("unchecked")
+	public <T, ID> T getWithPassThrough(String prefix, ID id, Type type, Function<ID, T> dbFallback, Long time,
 			TimeUnit timeUnit) {
 		String key = prefix + id;
-		String json = stringRedisTemplate.opsForValue().get(key);
-		if (StrUtil.isNotBlank(json)) {
-			return JSONUtil.toBean(json, type);
+		// 先查本地缓存
+		Object local = localCache.get(key);
+		if (local != null) {
+			return local == LocalCache.NULL ? null : (T) local;
 		}
-
-		if (json != null) {
-			return null;
+		Object cached = read(key, type);
+		if (cached != null) {
+			localCache.put(key, cached);
+			return cached == LocalCache.NULL ? null : (T) cached;
 		}
 
 		// 查询数据库
 		T result = dbFallback.apply(id);
 
 		// 缓存重建
+		localCache.put(key, result);
 		if (result == null) {
-			stringRedisTemplate.opsForValue().set(key, "", time, timeUnit);
+			cacheRedisTemplate.opsForValue().set(key, EMPTY, time, timeUnit);
 			return null;
 		}
 
@@ -79,100 +215,430 @@ public class CacheUtil {
 	}
 
 	/**
-	 * 互斥解决缓存击穿
+	 * 互斥解决缓存击穿，本节点内同一个key的并发未命中合并为一次加载
 	 */
-	public <T, ID> T getWithMutex(String prefix, ID id, Class<T> type, Function<ID, T> dbFallback, Long time,
+	@SuppressWarnings("unchecked")
+	public <T, ID> T getWithMutex(String prefix, ID id, Type type, Function<ID, T> dbFallback, Long time,
 			TimeUnit timeUnit) {
 
 		String key = prefix + id;
-		String json = stringRedisTemplate.opsForValue().get(key);
-		if (StrUtil.isNotBlank(json)) {
-			return JSONUtil.toBean(json, type);
+		// 先查本地缓存
+		Object local = localCache.get(key);
+		if (local != null) {
+			return local == LocalCache.NULL ? null : (T) local;
 		}
-
-		if (json != null) {
-			return null;
+		Object cached = read(key, type);
+		if (cached != null) {
+			localCache.put(key, cached);
+			return cached == LocalCache.NULL ? null : (T) cached;
 		}
 
-		// 缓存重建
-		if (tryLock(id)) {
-			T apply = dbFallback.apply(id);
+		// 同一个key的并发未命中在本节点合并为一次加载，其他线程等待加载结果
+		CompletableFuture<Object> loading = new CompletableFuture<>();
+		CompletableFuture<Object> existing = inFlight.putIfAbsent(key, loading);
+		if (existing != null) {
+			return (T) await(existing);
+		}
+		try {
+			T apply = loadWithMutex(key, id, type, dbFallback, time, timeUnit);
+			loading.complete(apply);
+			return apply;
+		} catch (RuntimeException e) {
+			loading.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, loading);
+		}
+	}
 
-			if (apply == null) {
-				stringRedisTemplate.opsForValue().set(key, "", RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
-				return null;
+	/**
+	 * 每个节点只有一个线程竞争Redis互斥锁；抢锁失败说明其他节点正在重建，按固定间隔重新读取Redis，
+	 * 超过锁的有效期仍未重建完成时直接查询数据库
+	 */
+	@SuppressWarnings("unchecked")
+	private <T, ID> T loadWithMutex(String key, ID id, Type type, Function<ID, T> dbFallback, Long time,
+			TimeUnit timeUnit) {
+		String lockKey = RedisConstants.LOCK_CACHE_KEY + key;
+		for (int i = 0; i < MUTEX_MAX_RETRIES; i++) {
+			String token = tryLock(lockKey, MUTEX_RETRY_MILLIS * MUTEX_MAX_RETRIES);
+			if (token != null) {
+				try {
+					T apply = dbFallback.apply(id);
+					localCache.put(key, apply);
+					if (apply == null) {
+						cacheRedisTemplate.opsForValue().set(key, EMPTY, RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+						return null;
+					}
+					set(key, apply, time, timeUnit);
+					return apply;
+				} finally {
+					unLock(lockKey, token);
+				}
 			}
-			stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(apply), time, timeUnit);
-			unLock(id);
-			return apply;
-		} else {
 			try {
-				Thread.sleep(30);
-				return getWithMutex(prefix, id, type, dbFallback, time, timeUnit);
+				Thread.sleep(MUTEX_RETRY_MILLIS);
 			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 				throw new RuntimeException(e);
 			}
+			Object cached = read(key, type);
+			if (cached != null) {
+				localCache.put(key, cached);
+				return cached == LocalCache.NULL ? null : (T) cached;
+			}
+		}
+		log.warn("等待缓存重建超时，直接查询数据库，key: {}", key);
+		return dbFallback.apply(id);
+	}
+
+	private Object await(CompletableFuture<Object> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
 		}
 	}
 
 	/**
-	 * 逻辑过期解决缓存击穿
+	 * 逻辑过期解决缓存击穿，过期后由一个节点异步重建，重建期间返回旧数据；热点key由CacheRefresher在逻辑过期前刷新，
+	 * 冷数据物理过期后再次访问时同步查询数据库；提前刷新使用HotKeyTracker中登记的查询方法，注解方法由CacheAspect登记
+	 * @param type 数据的类型，带泛型的类型使用 new TypeReference<List<ShopType>>() {}.getType()
 	 */
-	public <T, ID> T getWithLogicalExpire(String prefix, ID id, Class<T> type, Function<ID, T> dbFallback, Long time,
+	@SuppressWarnings("unchecked")
+	public <T, ID> T getWithLogicalExpire(String prefix, ID id, Type type, Function<ID, T> dbFallback, Long time,
 			TimeUnit timeUnit) {
 		String key = prefix + id;
-		String json = stringRedisTemplate.opsForValue().get(key);
-
-		if (StrUtil.isBlank(json)) {
-			return null;
+		// 本地缓存中未逻辑过期的数据直接返回
+		Object local = localCache.get(key);
+		if (local instanceof RedisData && ((RedisData<?>) local).getExpireTime().isAfter(LocalDateTime.now())) {
+			recordAccess(prefix, id, (RedisData<?>) local, time, timeUnit);
+			return (T) ((RedisData<?>) local).getData();
 		}
-
-		RedisData<T> redisData = JSONObject.parseObject(json, new TypeReference<RedisData<T>>() {
-		});
+		// 按调用方的类型反序列化data，JSON编码时不会得到JSONObject
+		Object cached = read(key, new TypeReference<RedisData<T>>(type) {
+		}.getType());
+		if (!(cached instanceof RedisData)) {
+			return loadWithLogicalExpire(key, id, dbFallback, time, timeUnit);
+		}
+		RedisData<T> redisData = (RedisData<T>) cached;
+		localCache.put(key, redisData);
+		recordAccess(prefix, id, redisData, time, timeUnit);
 
 		// 数据未过期--直接返回
 		if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
-			// T data = redisData.getData();
-			// if (data instanceof JSONObject) {
-			// return JSONObject.parseObject(data, type);
-			// }
 			return redisData.getData();
 		}
 
-		// 数据过期 重建缓存 返回旧数据
-		if (tryLock(id)) {
-			try {
-				CACHE_REBUILD_EXECUTOR.submit(() -> {
-					T apply = dbFallback.apply(id);
-					redisData.setData(apply);
-					redisData.setExpireTime(LocalDateTime.now().plusSeconds(RedisConstants.CACHE_SHOP_TTL));
+		// 数据过期 异步重建缓存 返回旧数据
+		rebuild(key, id, dbFallback, time, timeUnit);
+		return redisData.getData();
+	}
 
-					stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
-					return apply;
-				});
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			} finally {
-				unLock(id);
+	/**
+	 * 冷数据已物理过期或尚未写入，本节点内同一个key的并发请求合并为一次查询数据库后写入
+	 */
+	@SuppressWarnings("unchecked")
+	private <T, ID> T loadWithLogicalExpire(String key, ID id, Function<ID, T> dbFallback, Long time,
+			TimeUnit timeUnit) {
+		CompletableFuture<Object> loading = new CompletableFuture<>();
+		CompletableFuture<Object> existing = inFlight.putIfAbsent(key, loading);
+		if (existing != null) {
+			return (T) await(existing);
+		}
+		try {
+			T apply = dbFallback.apply(id);
+			localCache.put(key, writeWithLogicalExpire(key, apply, timeUnit.toMillis(time)));
+			loading.complete(apply);
+			return apply;
+		} catch (RuntimeException e) {
+			loading.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, loading);
+		}
+	}
+
+	private void recordAccess(String prefix, Object id, RedisData<?> redisData, Long time, TimeUnit timeUnit) {
+		long expireAtMillis = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		hotKeyTracker.record(prefix, id, expireAtMillis, timeUnit.toMillis(time));
+	}
+
+	/**
+	 * 抢到重建锁后提交重建任务，锁在重建完成后释放；线程池队列已满时放弃本次重建并释放锁，由后续读请求再次触发
+	 */
+	private <T, ID> void rebuild(String key, ID id, Function<ID, T> dbFallback, Long time, TimeUnit timeUnit) {
+		String lockKey = RedisConstants.LOCK_CACHE_KEY + key;
+		String token = tryLock(lockKey, cacheProperties.getRebuildLockMillis());
+		if (token == null) {
+			return;
+		}
+		try {
+			rebuildExecutor.execute(() -> {
+				long start = System.nanoTime();
+				try {
+					setWithLogicalExpire(key, dbFallback.apply(id), time, timeUnit);
+					// 失效各节点本地缓存中的旧数据
+					localCache.evict(key);
+					rebuildSuccessCounter.increment();
+				} catch (Exception e) {
+					rebuildFailureCounter.increment();
+					log.error("缓存重建失败，key: {}，{}", key, e.getMessage());
+				} finally {
+					rebuildTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+					unLock(lockKey, token);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			unLock(lockKey, token);
+			rebuildRejectedCounter.increment();
+			log.warn("缓存重建队列已满，放弃重建，key: {}", key);
+		}
+	}
+
+	/**
+	 * 批量查询，缓存空值解决缓存穿透：本地缓存和一次MGET未命中的id一次批量查询数据库，再通过一次管道写回
+	 * @param prefix 缓存key前缀
+	 * @param ids id列表
+	 * @param type 数据的类型
+	 * @param batchLoader 按id批量查询数据库，如 this::listByIds
+	 * @param idOf 获取数据的id
+	 * @param time 过期时间
+	 * @param timeUnit 时间单位
+	 * @return java.util.List<T> 与ids的顺序一致，不存在的数据为null
+	 * @author chenshanquan
+	 * @date 2025/10/11
+	 **/
+	public <T, ID> List<T> multiGet(String prefix, List<ID> ids, Type type, Function<List<ID>, List<T>> batchLoader,
+			Function<T, ID> idOf, Long time, TimeUnit timeUnit) {
+		return multiGet(prefix, ids, type, batchLoader, idOf, time, timeUnit, false);
+	}
+
+	/**
+	 * 批量查询逻辑过期缓存，与getWithLogicalExpire使用相同的缓存格式；已过期的数据返回旧数据并异步重建，
+	 * 未命中的数据批量查询数据库后写入
+	 * @return java.util.List<T> 与ids的顺序一致，不存在的数据为null
+	 * @author chenshanquan
+	 * @date 2025/10/11
+	 **/
+	public <T, ID> List<T> multiGetWithLogicalExpire(String prefix, List<ID> ids, Type type,
+			Function<List<ID>, List<T>> batchLoader, Function<T, ID> idOf, Long time, TimeUnit timeUnit) {
+		return multiGet(prefix, ids, type, batchLoader, idOf, time, timeUnit, true);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T, ID> List<T> multiGet(String prefix, List<ID> ids, Type type, Function<List<ID>, List<T>> batchLoader,
+			Function<T, ID> idOf, Long time, TimeUnit timeUnit, boolean logicalExpire) {
+		List<T> results = new ArrayList<>(Collections.nCopies(ids.size(), (T) null));
+		LocalDateTime now = LocalDateTime.now();
+		Function<ID, T> dbFallback = id -> loadOne(batchLoader, id);
+		if (logicalExpire) {
+			hotKeyTracker.registerBatchLoader(prefix, batchLoader, idOf);
+		}
+		// 先查本地缓存，记录未命中的位置
+		List<Integer> remote = new ArrayList<>();
+		for (int i = 0; i < ids.size(); i++) {
+			Object local = localCache.get(prefix + ids.get(i));
+			if (logicalExpire && local instanceof RedisData && ((RedisData<?>) local).getExpireTime().isAfter(now)) {
+				recordAccess(prefix, ids.get(i), (RedisData<?>) local, time, timeUnit);
+				results.set(i, ((RedisData<T>) local).getData());
+			} else if (!logicalExpire && local != null) {
+				results.set(i, local == LocalCache.NULL ? null : (T) local);
+			} else {
+				remote.add(i);
 			}
 		}
-		return redisData.getData();
+		if (remote.isEmpty()) {
+			return results;
+		}
+
+		// 一次MGET查询Redis
+		List<String> keys = remote.stream().map(i -> prefix + ids.get(i)).collect(Collectors.toList());
+		List<byte[]> values = cacheRedisTemplate.opsForValue().multiGet(keys);
+		Type cachedType = logicalExpire ? new TypeReference<RedisData<T>>(type) {
+		}.getType() : type;
+		List<Integer> missing = new ArrayList<>();
+		for (int j = 0; j < remote.size(); j++) {
+			int i = remote.get(j);
+			String key = keys.get(j);
+			Object cached = decode(key, values == null ? null : values.get(j), cachedType);
+			if (logicalExpire && cached instanceof RedisData) {
+				RedisData<T> redisData = (RedisData<T>) cached;
+				localCache.put(key, redisData);
+				recordAccess(prefix, ids.get(i), redisData, time, timeUnit);
+				results.set(i, redisData.getData());
+				if (!redisData.getExpireTime().isAfter(now)) {
+					rebuild(key, ids.get(i), dbFallback, time, timeUnit);
+				}
+			} else if (!logicalExpire && cached != null) {
+				localCache.put(key, cached);
+				results.set(i, cached == LocalCache.NULL ? null : (T) cached);
+			} else {
+				missing.add(i);
+			}
+		}
+		if (missing.isEmpty()) {
+			return results;
+		}
+
+		// 未命中的id一次批量查询数据库
+		List<ID> missingIds = missing.stream().map(ids::get).distinct().collect(Collectors.toList());
+		Map<ID, T> loaded = new HashMap<>(missingIds.size() * 2);
+		for (T value : batchLoader.apply(missingIds)) {
+			loaded.put(idOf.apply(value), value);
+		}
+		for (int i : missing) {
+			results.set(i, loaded.get(ids.get(i)));
+		}
+
+		// 一次管道写回，数据库中不存在的id缓存空值
+		Map<String, byte[]> writes = new LinkedHashMap<>(missingIds.size() * 2);
+		for (ID id : missingIds) {
+			String key = prefix + id;
+			T value = loaded.get(id);
+			if (logicalExpire) {
+				RedisData<T> redisData = new RedisData<>(
+						LocalDateTime.now().plus(timeUnit.toMillis(time), ChronoUnit.MILLIS), value);
+				localCache.put(key, redisData);
+				writes.put(key, cacheCodecs.encode(redisData));
+			} else {
+				localCache.put(key, value);
+				writes.put(key, value == null ? EMPTY : cacheCodecs.encode(value));
+			}
+		}
+		Expiration valueTtl = logicalExpire ? Expiration.milliseconds(physicalTtlMillis(timeUnit.toMillis(time)))
+				: Expiration.from(time, timeUnit);
+		Expiration nullTtl = Expiration.from(RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+		cacheRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+			for (Map.Entry<String, byte[]> entry : writes.entrySet()) {
+				connection.set(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue(),
+						entry.getValue().length == 0 ? nullTtl : valueTtl, RedisStringCommands.SetOption.upsert());
+			}
+			return null;
+		});
+		return results;
+	}
+
+	private static <T, ID> T loadOne(Function<List<ID>, List<T>> batchLoader, ID id) {
+		List<T> values = batchLoader.apply(Collections.singletonList(id));
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	/**
+	 * 提前刷新一批即将逻辑过期的热点key：在重建线程池中批量抢重建锁，抢到锁的key一次查询数据库，
+	 * 通过一次管道写回并延长物理过期时间，最后释放锁；已被其他节点或读请求重建的key跳过；
+	 * 无论成功、失败还是放弃，结束后都清除key的刷新标记，之后可以再次取出
+	 * @param prefix key前缀
+	 * @param hotKeys 需要刷新的key
+	 * @param loader 输入id列表，返回 String.valueOf(id) -> 数据
+	 * @return void
+	 * @author chenshanquan
+	 * @date 2025/10/12
+	 **/
+	public void refreshAhead(String prefix, List<HotKeyTracker.HotKey> hotKeys,
+			Function<List<Object>, Map<String, Object>> loader) {
+		try {
+			rebuildExecutor.execute(() -> {
+				try {
+					doRefreshAhead(prefix, hotKeys, loader);
+				} finally {
+					hotKeys.forEach(HotKeyTracker.HotKey::finishRefresh);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			hotKeys.forEach(HotKeyTracker.HotKey::finishRefresh);
+			rebuildRejectedCounter.increment(hotKeys.size());
+			log.warn("缓存重建队列已满，放弃提前刷新，前缀: {}，数量: {}", prefix, hotKeys.size());
+		}
+	}
+
+	private void doRefreshAhead(String prefix, List<HotKeyTracker.HotKey> hotKeys,
+			Function<List<Object>, Map<String, Object>> loader) {
+		long start = System.nanoTime();
+		// 一次管道批量抢锁
+		List<String> tokens = new ArrayList<>(hotKeys.size());
+		hotKeys.forEach(hotKey -> tokens.add(UUID.randomUUID().toString(true)));
+		Expiration lockTtl = Expiration.milliseconds(cacheProperties.getRebuildLockMillis());
+		List<Object> acquired = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+			StringRedisConnection stringConnection = (StringRedisConnection) connection;
+			for (int i = 0; i < hotKeys.size(); i++) {
+				stringConnection.set(RedisConstants.LOCK_CACHE_KEY + prefix + hotKeys.get(i).getId(), tokens.get(i),
+						lockTtl, RedisStringCommands.SetOption.ifAbsent());
+			}
+			return null;
+		});
+		List<HotKeyTracker.HotKey> claimed = new ArrayList<>(hotKeys.size());
+		Map<String, String> locks = new LinkedHashMap<>(hotKeys.size() * 2);
+		for (int i = 0; i < hotKeys.size(); i++) {
+			if (Boolean.TRUE.equals(acquired.get(i))) {
+				claimed.add(hotKeys.get(i));
+				locks.put(RedisConstants.LOCK_CACHE_KEY + prefix + hotKeys.get(i).getId(), tokens.get(i));
+			}
+		}
+		if (claimed.isEmpty()) {
+			return;
+		}
+		try {
+			Map<String, Object> values = loader
+					.apply(claimed.stream().map(HotKeyTracker.HotKey::getId).collect(Collectors.toList()));
+			long nowMillis = System.currentTimeMillis();
+			LocalDateTime now = LocalDateTime.ofInstant(Instant.ofEpochMilli(nowMillis), ZoneId.systemDefault());
+			// 查询不到数据的key不覆盖，保留原来的缓存，数据删除时由删除缓存处理
+			List<HotKeyTracker.HotKey> refreshed = new ArrayList<>(claimed.size());
+			Map<String, byte[]> writes = new LinkedHashMap<>(claimed.size() * 2);
+			for (HotKeyTracker.HotKey hotKey : claimed) {
+				Object value = values.get(String.valueOf(hotKey.getId()));
+				if (value == null) {
+					continue;
+				}
+				RedisData<Object> redisData = new RedisData<>(now.plus(hotKey.getTtlMillis(), ChronoUnit.MILLIS),
+						value);
+				refreshed.add(hotKey);
+				writes.put(prefix + hotKey.getId(), cacheCodecs.encode(redisData));
+			}
+			if (refreshed.isEmpty()) {
+				return;
+			}
+			cacheRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+				for (HotKeyTracker.HotKey hotKey : refreshed) {
+					String key = prefix + hotKey.getId();
+					connection.set(key.getBytes(StandardCharsets.UTF_8), writes.get(key),
+							Expiration.milliseconds(physicalTtlMillis(hotKey.getTtlMillis())),
+							RedisStringCommands.SetOption.upsert());
+				}
+				return null;
+			});
+			// 失效各节点本地缓存中的旧数据
+			writes.keySet().forEach(localCache::evict);
+			refreshed.forEach(hotKey -> hotKey.refreshed(nowMillis + hotKey.getTtlMillis()));
+			refreshCounter.increment(refreshed.size());
+		} catch (Exception e) {
+			rebuildFailureCounter.increment(claimed.size());
+			log.error("热点key提前刷新失败，前缀: {}，数量: {}，{}", prefix, claimed.size(), e.getMessage());
+		} finally {
+			rebuildTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			locks.forEach(this::unLock);
+		}
 	}
 
 	/**
-	 * 获取锁 使用setnx 如果有人操作 则写入失败 返回false
+	 * 获取锁 使用setnx 如果有人操作 则写入失败
+	 * @return 锁的持有标识，获取失败返回null
 	 */
-	private <ID> boolean tryLock(ID id) {
-		Boolean b = stringRedisTemplate.opsForValue().setIfAbsent(RedisConstants.LOCK_SHOP_KEY + id, "1", 3,
-				TimeUnit.SECONDS);
-		return BooleanUtil.isTrue(b);
+	private String tryLock(String lockKey, long ttlMillis) {
+		String token = UUID.randomUUID().toString(true);
+		Boolean b = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, ttlMillis, TimeUnit.MILLISECONDS);
+		return Boolean.TRUE.equals(b) ? token : null;
 	}
 
 	/**
-	 * 操作完后 删除数据 释放锁
+	 * 操作完后 释放锁，锁已过期被其他线程持有时不删除
 	 */
-	private <ID> void unLock(ID id) {
-		stringRedisTemplate.delete(RedisConstants.LOCK_SHOP_KEY + id);
+	private void unLock(String lockKey, String token) {
+		stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
 	}
 
 }
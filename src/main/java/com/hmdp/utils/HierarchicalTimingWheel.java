@@ -0,0 +1,195 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮
+ * 每层时间轮有wheelSize个槽，上一层的一个槽覆盖下一层的一整圈，添加任务和每个槽到期都是O(1)；
+ * 只有非空的槽进入DelayQueue，时钟按到期的槽推进，没有任务时不会空转
+ * @author chenshanquan
+ * @date 2025/10/4
+ **/
+public class HierarchicalTimingWheel<T> {
+
+    private final DelayQueue<Bucket<T>> delayQueue = new DelayQueue<>();
+    private final Wheel<T> root;
+    private final AtomicInteger size = new AtomicInteger();
+    // 添加任务持读锁，推进时钟持写锁，保证推进过程中槽内任务不会被并发修改
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this.root = new Wheel<>(tickMillis, wheelSize, startMillis, delayQueue);
+    }
+
+    /**
+     * 添加延时任务
+     * @param item 任务
+     * @param expirationMillis 到期时间（毫秒时间戳）
+     * @return boolean 已经到期时返回false，由调用方直接处理
+     * @author chenshanquan
+     * @date 2025/10/4
+     **/
+    public boolean add(T item, long expirationMillis) {
+        lock.readLock().lock();
+        try {
+            if (!root.add(new Entry<>(item, expirationMillis))) {
+                return false;
+            }
+            size.incrementAndGet();
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 等待最近一个槽到期并推进时钟，到期的任务交给回调处理，未到期的任务降级到下一层时间轮
+     * @param timeoutMillis 最长等待时间
+     * @param expired 到期任务的回调
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/4
+     **/
+    public void advance(long timeoutMillis, Consumer<T> expired) throws InterruptedException {
+        Bucket<T> bucket = delayQueue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (bucket == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            while (bucket != null) {
+                root.advanceClock(bucket.getExpiration());
+                for (Entry<T> entry : bucket.flush()) {
+                    if (!root.add(entry)) {
+                        size.decrementAndGet();
+                        expired.accept(entry.item);
+                    }
+                }
+                bucket = delayQueue.poll();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 时间轮中尚未到期的任务数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private static class Wheel<T> {
+        private final long tickMillis;
+        private final int wheelSize;
+        private final long interval;
+        private final Bucket<T>[] buckets;
+        private final DelayQueue<Bucket<T>> delayQueue;
+        private volatile long currentTime;
+        private volatile Wheel<T> overflowWheel;
+
+        @SuppressWarnings("unchecked")
+        Wheel(long tickMillis, int wheelSize, long startMillis, DelayQueue<Bucket<T>> delayQueue) {
+            this.tickMillis = tickMillis;
+            this.wheelSize = wheelSize;
+            this.interval = tickMillis * wheelSize;
+            this.delayQueue = delayQueue;
+            this.currentTime = startMillis - startMillis % tickMillis;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket<>();
+            }
+        }
+
+        boolean add(Entry<T> entry) {
+            long expiration = entry.expiration;
+            if (expiration < currentTime + tickMillis) {
+                return false;
+            }
+            if (expiration < currentTime + interval) {
+                long virtualId = expiration / tickMillis;
+                Bucket<T> bucket = buckets[(int) (virtualId % wheelSize)];
+                bucket.add(entry);
+                // 槽的到期时间变化说明是新的一圈，需要重新放入DelayQueue
+                if (bucket.setExpiration(virtualId * tickMillis)) {
+                    delayQueue.offer(bucket);
+                }
+                return true;
+            }
+            return overflowWheel().add(entry);
+        }
+
+        void advanceClock(long timeMillis) {
+            if (timeMillis >= currentTime + tickMillis) {
+                currentTime = timeMillis - timeMillis % tickMillis;
+                Wheel<T> overflow = overflowWheel;
+                if (overflow != null) {
+                    overflow.advanceClock(currentTime);
+                }
+            }
+        }
+
+        private Wheel<T> overflowWheel() {
+            if (overflowWheel == null) {
+                synchronized (this) {
+                    if (overflowWheel == null) {
+                        overflowWheel = new Wheel<>(interval, wheelSize, currentTime, delayQueue);
+                    }
+                }
+            }
+            return overflowWheel;
+        }
+    }
+
+    private static class Bucket<T> implements Delayed {
+        private final AtomicLong expiration = new AtomicLong(-1);
+        private final List<Entry<T>> entries = new ArrayList<>();
+
+        synchronized void add(Entry<T> entry) {
+            entries.add(entry);
+        }
+
+        synchronized List<Entry<T>> flush() {
+            List<Entry<T>> flushed = new ArrayList<>(entries);
+            entries.clear();
+            expiration.set(-1);
+            return flushed;
+        }
+
+        boolean setExpiration(long expirationMillis) {
+            return expiration.getAndSet(expirationMillis) != expirationMillis;
+        }
+
+        long getExpiration() {
+            return expiration.get();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(expiration.get() - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(expiration.get(), ((Bucket<?>) o).expiration.get());
+        }
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private final long expiration;
+
+        Entry(T item, long expiration) {
+            this.item = item;
+            this.expiration = expiration;
+        }
+    }
+}
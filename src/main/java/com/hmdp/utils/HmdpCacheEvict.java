@@ -0,0 +1,28 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法正常返回后删除缓存，同时失效各节点的本地缓存；方法有事务时在事务提交后删除
+ * @author chenshanquan
+ * @date 2025/10/9
+ **/
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface HmdpCacheEvict {
+
+    /**
+     * 缓存key前缀
+     */
+    String prefix();
+
+    /**
+     * 缓存key的SpEL表达式，可以引用方法参数，如 #shop.id
+     */
+    String key();
+}
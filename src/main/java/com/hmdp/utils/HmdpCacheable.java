@@ -0,0 +1,47 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存方法的返回值，缓存key为 prefix + key表达式的值，未命中时执行方法并写入缓存
+ * 通过代理生效，类内部调用需要通过AopContext.currentProxy()获取代理对象
+ * @author chenshanquan
+ * @date 2025/10/9
+ **/
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface HmdpCacheable {
+
+    /**
+     * 缓存key前缀
+     */
+    String prefix();
+
+    /**
+     * 缓存key的SpEL表达式，可以引用方法参数，如 #id
+     */
+    String key();
+
+    /**
+     * 读取策略
+     */
+    CacheStrategy strategy() default CacheStrategy.PASS_THROUGH;
+
+    /**
+     * 过期时间，逻辑过期策略下为逻辑过期时间
+     */
+    long ttl();
+
+    /**
+     * 过期时间的随机增量上限，避免同一批写入的key同时过期
+     */
+    long jitter() default 0;
+
+    TimeUnit timeUnit() default TimeUnit.MINUTES;
+}
@@ -0,0 +1,198 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.CacheProperties;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 逻辑过期key的访问统计
+ * 记录每个key的访问次数和逻辑过期时间，访问次数按扫描周期衰减；长时间没有访问的key不再跟踪，
+ * 由CacheRefresher定期取出即将逻辑过期的热点key提前刷新；只跟踪登记了查询方法的前缀，刷新时按id查询数据库
+ * @author chenshanquan
+ * @date 2025/10/12
+ **/
+@Component
+@RequiredArgsConstructor
+public class HotKeyTracker {
+
+    private final CacheProperties cacheProperties;
+
+    // 缓存key -> 访问统计
+    private Cache<String, HotKey> hotKeys;
+    // key前缀 -> 批量查询数据库的方法
+    private final Map<String, BatchLoader> batchLoaders = new ConcurrentHashMap<>();
+    // key前缀 -> 按id查询数据库的方法
+    private final Map<String, Function<Object, Object>> loaders = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        hotKeys = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getRefreshMaxKeys())
+                .expireAfterAccess(cacheProperties.getColdRetainMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 记录一次访问
+     * @param prefix key前缀
+     * @param id 数据id
+     * @param expireAtMillis 当前的逻辑过期时间
+     * @param ttlMillis 逻辑过期时长
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/12
+     **/
+    public void record(String prefix, Object id, long expireAtMillis, long ttlMillis) {
+        if (!cacheProperties.isRefreshEnabled()) {
+            return;
+        }
+        // 没有登记查询方法的前缀无法提前刷新，过期后由读请求触发重建
+        if (!batchLoaders.containsKey(prefix) && !loaders.containsKey(prefix)) {
+            return;
+        }
+        HotKey hotKey = hotKeys.get(prefix + id, key -> new HotKey(prefix, id, ttlMillis));
+        hotKey.hits.increment();
+        hotKey.expireAtMillis = expireAtMillis;
+    }
+
+    /**
+     * 登记前缀的批量查询方法，刷新时同一前缀的key一次查询数据库
+     * @param prefix key前缀
+     * @param batchLoader 按id批量查询数据库
+     * @param idOf 获取数据的id
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/12
+     **/
+    @SuppressWarnings("unchecked")
+    public <T, ID> void registerBatchLoader(String prefix, Function<List<ID>, List<T>> batchLoader,
+            Function<T, ID> idOf) {
+        batchLoaders.putIfAbsent(prefix,
+                new BatchLoader((Function<List<Object>, List<Object>>) (Function<?, ?>) batchLoader,
+                        (Function<Object, Object>) (Function<?, ?>) idOf));
+    }
+
+    /**
+     * 登记前缀按id查询数据库的方法，前缀没有登记批量查询时逐个调用
+     * 查询方法在刷新线程中执行，不能依赖请求上下文
+     * @param prefix key前缀
+     * @param loader 按id查询数据库
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/14
+     **/
+    @SuppressWarnings("unchecked")
+    public <T, ID> void registerLoader(String prefix, Function<ID, T> loader) {
+        loaders.putIfAbsent(prefix, (Function<Object, Object>) (Function<?, ?>) loader);
+    }
+
+    /**
+     * 取出需要提前刷新的热点key并衰减所有key的访问次数，取出的key在刷新结束前不会再次取出
+     * @param deadlineMillis 逻辑过期时间早于该时间的key需要刷新
+     * @param hotThreshold 衰减后的访问次数不低于该值的key是热点key
+     * @return java.util.Map<java.lang.String, java.util.List<com.hmdp.utils.HotKeyTracker.HotKey>> key前缀 -> 需要刷新的key
+     * @author chenshanquan
+     * @date 2025/10/12
+     **/
+    public Map<String, List<HotKey>> collectDue(long deadlineMillis, long hotThreshold) {
+        Map<String, List<HotKey>> due = new HashMap<>();
+        for (HotKey hotKey : hotKeys.asMap().values()) {
+            // 访问次数按扫描周期指数衰减
+            hotKey.score = hotKey.score / 2 + hotKey.hits.sumThenReset();
+            if (hotKey.expireAtMillis <= deadlineMillis && hotKey.score >= hotThreshold
+                    && hotKey.refreshing.compareAndSet(false, true)) {
+                due.computeIfAbsent(hotKey.prefix, prefix -> new ArrayList<>()).add(hotKey);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * 前缀的查询方法：登记了批量查询的前缀一次查询所有id，否则逐个调用登记的按id查询方法
+     * 同一个key可能由id类型不同的调用方记录，结果统一按 String.valueOf(id) 索引
+     * @param prefix key前缀
+     * @param keys 需要查询的key
+     * @return java.util.function.Function 输入id列表，返回 String.valueOf(id) -> 数据
+     * @author chenshanquan
+     * @date 2025/10/12
+     **/
+    public Function<List<Object>, Map<String, Object>> loaderOf(String prefix, List<HotKey> keys) {
+        BatchLoader batchLoader = batchLoaders.get(prefix);
+        if (batchLoader != null) {
+            return ids -> {
+                Map<String, Object> values = new HashMap<>(ids.size() * 2);
+                for (Object value : batchLoader.loader.apply(ids)) {
+                    values.put(String.valueOf(batchLoader.idOf.apply(value)), value);
+                }
+                return values;
+            };
+        }
+        Function<Object, Object> loader = loaders.get(prefix);
+        return ids -> {
+            Map<String, Object> values = new HashMap<>(ids.size() * 2);
+            for (Object id : ids) {
+                values.put(String.valueOf(id), loader.apply(id));
+            }
+            return values;
+        };
+    }
+
+    public static class HotKey {
+        @Getter
+        private final String prefix;
+        @Getter
+        private final Object id;
+        @Getter
+        private final long ttlMillis;
+        private final LongAdder hits = new LongAdder();
+        // 衰减后的访问次数，只在扫描线程中修改
+        private long score;
+        private volatile long expireAtMillis;
+        // 已取出等待刷新或正在刷新，本地缓存中的旧数据仍会被读到，刷新结束前不再取出
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        HotKey(String prefix, Object id, long ttlMillis) {
+            this.prefix = prefix;
+            this.id = id;
+            this.ttlMillis = ttlMillis;
+        }
+
+        /**
+         * 刷新写回成功，记录新的逻辑过期时间
+         */
+        void refreshed(long expireAtMillis) {
+            this.expireAtMillis = expireAtMillis;
+        }
+
+        /**
+         * 刷新结束（包括失败和放弃），之后可以再次取出
+         */
+        void finishRefresh() {
+            refreshing.set(false);
+        }
+    }
+
+    private static class BatchLoader {
+        private final Function<List<Object>, List<Object>> loader;
+        private final Function<Object, Object> idOf;
+
+        BatchLoader(Function<List<Object>, List<Object>> loader, Function<Object, Object> idOf) {
+            this.loader = loader;
+            this.idOf = idOf;
+        }
+    }
+}
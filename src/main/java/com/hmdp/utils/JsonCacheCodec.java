@@ -0,0 +1,42 @@
+package com.hmdp.utils;
+
+import com.alibaba.fastjson.JSON;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+
+/**
+ * JSON编码器，可以编码任意类型；也用于读取没有格式头的旧缓存值
+ * @author chenshanquan
+ * @date 2025/10/10
+ **/
+@Component
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final byte ID = 1;
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public boolean canEncode(Object value) {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSON.toJSONBytes(value);
+    }
+
+    @Override
+    public Object decode(byte[] bytes, Type type) {
+        return JSON.parseObject(bytes, type);
+    }
+}
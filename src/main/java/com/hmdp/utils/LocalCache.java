@@ -0,0 +1,118 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.CacheProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地一级缓存
+ * 位于Redis之前，只对配置的key前缀生效；使用Caffeine按访问频率决定是否接纳新条目，容量和过期时间按前缀配置；
+ * 缓存的是反序列化后的对象，调用方不要修改返回的对象；删除缓存时通过Redis发布订阅通知所有节点失效本地缓存
+ * @author chenshanquan
+ * @date 2025/10/7
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LocalCache implements MessageListener {
+
+    // 缓存空值的占位对象
+    public static final Object NULL = new Object();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final CacheProperties cacheProperties;
+
+    // key前缀 -> 本地缓存，按前缀长度降序，优先匹配最长的前缀
+    private final Map<String, Cache<String, Object>> caches = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        List<CacheProperties.Spec> specs = cacheProperties.getLocal();
+        specs.sort(Comparator.comparingInt((CacheProperties.Spec spec) -> spec.getPrefix().length()).reversed());
+        for (CacheProperties.Spec spec : specs) {
+            caches.put(spec.getPrefix(), Caffeine.newBuilder()
+                    .maximumSize(spec.getMaximumSize())
+                    .expireAfterWrite(spec.getTtlMillis(), TimeUnit.MILLISECONDS)
+                    .build());
+        }
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.CACHE_EVICT_CHANNEL));
+    }
+
+    /**
+     * 读取本地缓存
+     * @param key 缓存key
+     * @return java.lang.Object 未命中或前缀未启用本地缓存时返回null，缓存的空值返回NULL
+     * @author chenshanquan
+     * @date 2025/10/7
+     **/
+    public Object get(String key) {
+        Cache<String, Object> cache = cacheOf(key);
+        return cache == null ? null : cache.getIfPresent(key);
+    }
+
+    /**
+     * 写入本地缓存，前缀未启用本地缓存时忽略
+     * @param key 缓存key
+     * @param value 缓存值，null按空值缓存
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/7
+     **/
+    public void put(String key, Object value) {
+        Cache<String, Object> cache = cacheOf(key);
+        if (cache != null) {
+            cache.put(key, value == null ? NULL : value);
+        }
+    }
+
+    /**
+     * 失效本节点和其他节点的本地缓存
+     * @param key 缓存key
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/7
+     **/
+    public void evict(String key) {
+        Cache<String, Object> cache = cacheOf(key);
+        if (cache == null) {
+            return;
+        }
+        cache.invalidate(key);
+        stringRedisTemplate.convertAndSend(RedisConstants.CACHE_EVICT_CHANNEL, key);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        Cache<String, Object> cache = cacheOf(key);
+        if (cache != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    private Cache<String, Object> cacheOf(String key) {
+        for (Map.Entry<String, Cache<String, Object>> entry : caches.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
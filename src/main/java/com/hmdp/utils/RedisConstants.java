@@ -8,18 +8,41 @@ public class RedisConstants {
 
     public static final Long CACHE_NULL_TTL = 2L;
 
-    public static final Long CACHE_SHOP_TTL = 30L;
+    public static final long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    public static final long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final long CACHE_USER_TTL = 30L;
+    public static final String CACHE_SHOP_VOUCHER_KEY = "cache:voucher:shop:";
+    public static final long CACHE_SHOP_VOUCHER_TTL = 60L;
+
+    public static final String CACHE_EVICT_CHANNEL = "cache:evict";
+
+    public static final String LOCK_CACHE_KEY = "lock:";
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_VOUCHER_KEY = "seckill:voucher:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_ORDER_BITMAP_KEY = "seckill:order:bitmap:";
+    public static final String SECKILL_ORDER_STATUS_KEY = "seckill:order:status:";
+    public static final String SECKILL_BUCKET_KEY = "seckill:bucket:";
+    public static final String SECKILL_PERMITS_KEY = "seckill:permits:";
+    public static final String SECKILL_ROOM_KEY = "seckill:room:";
+    public static final String SECKILL_ROOM_ADMITTED_KEY = "seckill:room:admitted:";
+    public static final String SECKILL_ROOM_WAVE_KEY = "seckill:room:wave:";
+    public static final String SECKILL_ROOM_VOUCHERS_KEY = "seckill:room:vouchers";
+    public static final String SECKILL_ORDER_TIMEOUT_KEY = "seckill:order:timeout";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_RESTOCK_CHANNEL = "seckill:restock";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
 
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shop-type-list:";
-    public static final Long CACHE_SHOP_TYPE_TTL = 30L;
+    public static final long CACHE_SHOP_TYPE_TTL = 30L;
 }
@@ -0,0 +1,225 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.hmdp.config.SeckillProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_PERMITS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_KEY;
+
+/**
+ * 本地准入许可
+ * 全局许可数为库存乘以超发系数，每个节点从Redis按批租用许可，请求先在本地扣减许可，
+ * 没有许可的请求直接拒绝，不访问Redis；闲置的许可定时归还，供其他节点租用。
+ * 许可只由抢购成功或售罄的请求消耗，被秒杀脚本以其他原因拒绝的请求归还许可；秒杀开始前不经过准入许可。
+ * 本地许可按优惠券缓存，数量有上限且长时间不访问后淘汰，淘汰时归还剩余的许可；未预热的优惠券不缓存
+ * @author chenshanquan
+ * @date 2025/10/2
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SeckillPermitGate {
+
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT;
+
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("permit_lease.lua"));
+        LEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillProperties seckillProperties;
+
+    // 优惠券id -> 本地许可
+    private Cache<Long, LocalPermits> localPermits;
+
+    @PostConstruct
+    public void init() {
+        localPermits = Caffeine.newBuilder()
+                .maximumSize(seckillProperties.getPermitMaxVouchers())
+                .expireAfterAccess(seckillProperties.getPermitExpireMillis(), TimeUnit.MILLISECONDS)
+                .removalListener((Long voucherId, LocalPermits permits, RemovalCause cause) -> {
+                    if (voucherId != null && permits != null) {
+                        returnPermits(voucherId, permits);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 获取一个准入许可，本地许可用完时由一个线程去Redis租用，其他线程直接拒绝
+     * @param voucherId 优惠券id
+     * @return com.hmdp.utils.SeckillPermitGate.Admission ACQUIRED 取得许可；BYPASSED 不经过许可放行；REJECTED 拒绝
+     * @author chenshanquan
+     * @date 2025/10/2
+     **/
+    public Admission tryAcquire(Long voucherId) {
+        if (!seckillProperties.isPermitGateEnabled()) {
+            return Admission.BYPASSED;
+        }
+        LocalPermits permits = permitsOf(voucherId);
+        if (permits == null) {
+            // 秒杀券未预热或读取失败，由秒杀脚本校验
+            return Admission.BYPASSED;
+        }
+        long now = System.currentTimeMillis();
+        // 秒杀开始前的请求由秒杀脚本拒绝，不消耗许可
+        if (permits.unmanagedUntil > now || permits.beginAt > now) {
+            return Admission.BYPASSED;
+        }
+        if (permits.tryTake(now)) {
+            return Admission.ACQUIRED;
+        }
+        if (permits.exhaustedUntil > now || !permits.leasing.compareAndSet(false, true)) {
+            return Admission.REJECTED;
+        }
+        try {
+            Long leased = stringRedisTemplate.execute(LEASE_SCRIPT,
+                    Collections.singletonList(SECKILL_PERMITS_KEY + voucherId),
+                    String.valueOf(seckillProperties.getPermitLeaseSize()));
+            if (leased == null || leased < 0) {
+                // 优惠券未启用许可，一段时间内全部放行
+                permits.unmanagedUntil = now + seckillProperties.getPermitRecheckMillis();
+                return Admission.BYPASSED;
+            }
+            if (leased == 0) {
+                permits.exhaustedUntil = now + seckillProperties.getPermitRecheckMillis();
+                return Admission.REJECTED;
+            }
+            permits.available.addAndGet(leased - 1);
+            permits.lastUsedAt = now;
+            return Admission.ACQUIRED;
+        } catch (Exception e) {
+            // 租用失败时放行，由秒杀脚本做最终校验
+            log.error("租用准入许可失败，优惠券ID: {}，{}", voucherId, e.getMessage());
+            return Admission.BYPASSED;
+        } finally {
+            permits.leasing.set(false);
+        }
+    }
+
+    /**
+     * 归还一个许可到本地，用于取得许可但被秒杀脚本以售罄以外的原因拒绝的请求
+     * @param voucherId 优惠券id
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/2
+     **/
+    public void release(Long voucherId) {
+        LocalPermits permits = localPermits.getIfPresent(voucherId);
+        if (permits != null) {
+            permits.available.incrementAndGet();
+        }
+    }
+
+    /**
+     * 定时归还闲置的本地许可
+     * @param
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/2
+     **/
+    @Scheduled(fixedDelayString = "${hmdp.seckill.permit-idle-millis:1000}")
+    public void returnIdlePermits() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, LocalPermits> entry : localPermits.asMap().entrySet()) {
+            if (now - entry.getValue().lastUsedAt >= seckillProperties.getPermitIdleMillis()) {
+                returnPermits(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void returnPermits(Long voucherId, LocalPermits permits) {
+        long idle = permits.available.getAndSet(0);
+        if (idle <= 0) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().increment(SECKILL_PERMITS_KEY + voucherId, idle);
+        } catch (Exception e) {
+            permits.available.addAndGet(idle);
+            log.error("归还准入许可失败，优惠券ID: {}，{}", voucherId, e.getMessage());
+        }
+    }
+
+    /**
+     * 本地许可在缓存期间只读取一次秒杀开始时间，秒杀券未预热或读取失败时返回null，不缓存
+     */
+    private LocalPermits permitsOf(Long voucherId) {
+        LocalPermits permits = localPermits.getIfPresent(voucherId);
+        if (permits != null) {
+            return permits;
+        }
+        Long beginAt = queryBeginTime(voucherId);
+        if (beginAt == null) {
+            return null;
+        }
+        return localPermits.get(voucherId, id -> new LocalPermits(beginAt));
+    }
+
+    private Long queryBeginTime(Long voucherId) {
+        try {
+            Object begin = stringRedisTemplate.opsForHash().get(SECKILL_VOUCHER_KEY + voucherId, "begin");
+            return begin == null ? null : Long.parseLong(begin.toString());
+        } catch (Exception e) {
+            log.error("读取秒杀开始时间失败，优惠券ID: {}，{}", voucherId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 准入结果
+     */
+    public enum Admission {
+        // 取得许可，被秒杀脚本以售罄以外的原因拒绝时需要归还
+        ACQUIRED,
+        // 未启用许可、秒杀未开始或租用失败，不经过许可放行
+        BYPASSED,
+        // 没有许可，拒绝
+        REJECTED
+    }
+
+    private static class LocalPermits {
+        private final AtomicLong available = new AtomicLong();
+        // 秒杀开始时间（毫秒时间戳），0表示不限制
+        private final long beginAt;
+        private final AtomicBoolean leasing = new AtomicBoolean();
+        private volatile long lastUsedAt;
+        // 全局许可耗尽，在此之前不再租用
+        private volatile long exhaustedUntil;
+        // 优惠券未启用许可，在此之前全部放行
+        private volatile long unmanagedUntil;
+
+        LocalPermits(long beginAt) {
+            this.beginAt = beginAt;
+        }
+
+        private boolean tryTake(long now) {
+            long current;
+            while ((current = available.get()) > 0) {
+                if (available.compareAndSet(current, current - 1)) {
+                    lastUsedAt = now;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
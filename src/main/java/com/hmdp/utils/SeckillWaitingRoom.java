@@ -0,0 +1,204 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.dto.WaitingTicketDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ROOM_ADMITTED_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ROOM_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ROOM_VOUCHERS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ROOM_WAVE_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_VOUCHER_KEY;
+
+/**
+ * 秒杀排队室
+ * 用户在秒杀开始前加入优惠券的排队队列（ZSET，按加入时间排序），秒杀开始后按固定间隔分批放行，
+ * 执行秒杀脚本前只放行已放行的用户，把开抢瞬间的流量削平为稳定的速率；未放行的请求只需要一次SISMEMBER，不执行秒杀脚本
+ * @author chenshanquan
+ * @date 2025/10/3
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SeckillWaitingRoom {
+
+    // 本地缓存排队室开关的最大优惠券数
+    private static final int ROOM_FLAG_MAX_VOUCHERS = 10000;
+
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+
+    static {
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("room_release.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SeckillProperties seckillProperties;
+
+    // 优惠券id -> 是否启用排队室，过期后重新读取，优惠券重新配置后生效
+    private Cache<Long, Boolean> roomEnabled;
+
+    @PostConstruct
+    public void init() {
+        roomEnabled = Caffeine.newBuilder()
+                .maximumSize(ROOM_FLAG_MAX_VOUCHERS)
+                .expireAfterWrite(seckillProperties.getRoomFlagCacheMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 判断用户能否进入秒杀脚本：优惠券未启用排队室，或者用户已被放行
+     * 是否启用排队室在本地缓存，只有启用排队室的优惠券多一次SISMEMBER
+     * @param voucherId 优惠券id
+     * @param userId 用户id
+     * @return boolean
+     * @author chenshanquan
+     * @date 2025/10/3
+     **/
+    public boolean canEnter(Long voucherId, Long userId) {
+        Boolean enabled = roomEnabled.getIfPresent(voucherId);
+        if (enabled == null) {
+            List<Object> voucher = stringRedisTemplate.opsForHash().multiGet(SECKILL_VOUCHER_KEY + voucherId,
+                    Arrays.asList("room", "begin"));
+            if (voucher.get(1) == null) {
+                // 秒杀券未预热，由秒杀脚本按不存在拒绝
+                return true;
+            }
+            enabled = "1".equals(voucher.get(0));
+            roomEnabled.put(voucherId, enabled);
+        }
+        return !enabled || isAdmitted(voucherId, userId);
+    }
+
+    /**
+     * 加入排队，重复加入保留原来的位置
+     * @param voucherId 优惠券id
+     * @param userId 用户id
+     * @return com.hmdp.dto.WaitingTicketDTO 排队票据，优惠券未启用排队室或秒杀已结束时返回null
+     * @author chenshanquan
+     * @date 2025/10/3
+     **/
+    public WaitingTicketDTO join(Long voucherId, Long userId) {
+        List<Object> voucher = stringRedisTemplate.opsForHash().multiGet(SECKILL_VOUCHER_KEY + voucherId,
+                Arrays.asList("room", "end"));
+        if (!"1".equals(voucher.get(0))) {
+            return null;
+        }
+        long endTime = voucher.get(1) == null ? 0 : Long.parseLong(voucher.get(1).toString());
+        long now = System.currentTimeMillis();
+        if (endTime > 0 && now > endTime) {
+            return null;
+        }
+        String roomKey = SECKILL_ROOM_KEY + voucherId;
+        if (!isAdmitted(voucherId, userId)) {
+            stringRedisTemplate.opsForZSet().addIfAbsent(roomKey, userId.toString(), now);
+            stringRedisTemplate.expire(roomKey, Duration.ofMillis(retainMillis(endTime, now)));
+            stringRedisTemplate.opsForSet().add(SECKILL_ROOM_VOUCHERS_KEY, voucherId.toString());
+        }
+        return query(voucherId, userId);
+    }
+
+    /**
+     * 查询排队进度
+     * @param voucherId 优惠券id
+     * @param userId 用户id
+     * @return com.hmdp.dto.WaitingTicketDTO 未排队时返回null
+     * @author chenshanquan
+     * @date 2025/10/3
+     **/
+    public WaitingTicketDTO query(Long voucherId, Long userId) {
+        WaitingTicketDTO ticket = new WaitingTicketDTO();
+        ticket.setVoucherId(voucherId);
+        if (isAdmitted(voucherId, userId)) {
+            ticket.setAdmitted(true);
+            ticket.setPosition(0L);
+            return ticket;
+        }
+        Long rank = stringRedisTemplate.opsForZSet().rank(SECKILL_ROOM_KEY + voucherId, userId.toString());
+        if (rank == null) {
+            return null;
+        }
+        ticket.setAdmitted(false);
+        ticket.setPosition(rank);
+        return ticket;
+    }
+
+    /**
+     * 定时放行：每个优惠券每个间隔只由一个节点放行一波，秒杀开始前不放行，结束后不再调度
+     * @param
+     * @return void
+     * @author chenshanquan
+     * @date 2025/10/3
+     **/
+    @Scheduled(fixedDelayString = "${hmdp.seckill.room-wave-interval-millis:1000}")
+    public void releaseWaves() {
+        Set<String> voucherIds = stringRedisTemplate.opsForSet().members(SECKILL_ROOM_VOUCHERS_KEY);
+        if (voucherIds == null || voucherIds.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String voucherId : voucherIds) {
+            try {
+                releaseWave(voucherId, now);
+            } catch (Exception e) {
+                log.error("排队室放行异常，优惠券ID: {}，{}", voucherId, e.getMessage());
+            }
+        }
+    }
+
+    private void releaseWave(String voucherId, long now) {
+        List<Object> voucher = stringRedisTemplate.opsForHash().multiGet(SECKILL_VOUCHER_KEY + voucherId,
+                Arrays.asList("begin", "end"));
+        long beginTime = voucher.get(0) == null ? 0 : Long.parseLong(voucher.get(0).toString());
+        long endTime = voucher.get(1) == null ? 0 : Long.parseLong(voucher.get(1).toString());
+        if (voucher.get(0) == null || (endTime > 0 && now > endTime)) {
+            // 秒杀券已删除或已结束，不再调度
+            stringRedisTemplate.opsForSet().remove(SECKILL_ROOM_VOUCHERS_KEY, voucherId);
+            return;
+        }
+        if (beginTime > 0 && now < beginTime) {
+            return;
+        }
+        // 抢到本轮放行权的节点才放行
+        Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(SECKILL_ROOM_WAVE_KEY + voucherId, "1",
+                Duration.ofMillis(seckillProperties.getRoomWaveIntervalMillis()));
+        if (!Boolean.TRUE.equals(acquired)) {
+            return;
+        }
+        Long released = stringRedisTemplate.execute(RELEASE_SCRIPT,
+                Arrays.asList(SECKILL_ROOM_KEY + voucherId, SECKILL_ROOM_ADMITTED_KEY + voucherId),
+                String.valueOf(seckillProperties.getRoomWaveSize()), String.valueOf(retainMillis(endTime, now)));
+        if (released != null && released > 0) {
+            log.info("排队室放行，优惠券ID: {}，人数: {}", voucherId, released);
+        }
+    }
+
+    /**
+     * 排队记录的过期时间：在秒杀结束后的保留时间与购买记录一致，未设置结束时间时使用roomRetainMillis
+     */
+    private long retainMillis(long endTime, long now) {
+        return endTime > 0 ? endTime + seckillProperties.getOrderRetainMillis() - now
+                : seckillProperties.getRoomRetainMillis();
+    }
+
+    private boolean isAdmitted(Long voucherId, Long userId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForSet()
+                .isMember(SECKILL_ROOM_ADMITTED_KEY + voucherId, userId.toString()));
+    }
+}
@@ -0,0 +1,111 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地售罄标记
+ * 秒杀券售罄后在本地记录，后续请求直接在内存中拒绝，不再访问Redis；
+ * 售罄和补货通过Redis发布订阅同步到其他节点
+ * @author chenshanquan
+ * @date 2025/9/23
+ **/
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SoldOutRegistry implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+    private final SeckillProperties seckillProperties;
+
+    // 优惠券id -> 标记售罄的时间
+    private final Map<Long, Long> soldOutVouchers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.SECKILL_SOLD_OUT_CHANNEL));
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisConstants.SECKILL_RESTOCK_CHANNEL));
+    }
+
+    /**
+     * 判断优惠券是否已售罄，标记超过复查时间后放行一次请求到Redis重新确认，避免错过补货消息；
+     * 复查期间标记保留，仍然售罄时只刷新本地的标记时间，不再通知其他节点
+     * @param voucherId 优惠券id
+     * @return boolean
+     * @author chenshanquan
+     * @date 2025/9/23
+     **/
+    public boolean isSoldOut(Long voucherId) {
+        Long markedAt = soldOutVouchers.get(voucherId);
+        if (markedAt == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now - markedAt > seckillProperties.getSoldOutRecheckMillis()) {
+            // 只有刷新成功的请求去Redis复查
+            return !soldOutVouchers.replace(voucherId, markedAt, now);
+        }
+        return true;
+    }
+
+    /**
+     * 标记售罄，本地首次标记时通知其他节点
+     * @param voucherId 优惠券id
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/23
+     **/
+    public void markSoldOut(Long voucherId) {
+        if (soldOutVouchers.put(voucherId, System.currentTimeMillis()) == null) {
+            stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+        }
+    }
+
+    /**
+     * 复查时Redis仍有库存（错过了补货消息），只清除本地的售罄标记
+     * @param voucherId 优惠券id
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/23
+     **/
+    public void markAvailable(Long voucherId) {
+        soldOutVouchers.remove(voucherId);
+    }
+
+    /**
+     * 补货后清除售罄标记并通知其他节点
+     * @param voucherId 优惠券id
+     * @return void
+     * @author chenshanquan
+     * @date 2025/9/23
+     **/
+    public void clearSoldOut(Long voucherId) {
+        soldOutVouchers.remove(voucherId);
+        stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_RESTOCK_CHANNEL, voucherId.toString());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        Long voucherId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (RedisConstants.SECKILL_SOLD_OUT_CHANNEL.equals(channel)) {
+            soldOutVouchers.putIfAbsent(voucherId, System.currentTimeMillis());
+        } else {
+            log.info("优惠券补货，清除售罄标记，优惠券ID: {}", voucherId);
+            soldOutVouchers.remove(voucherId);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+-- 将一条死信消息重新投递到订单消息队列，删除和投递在同一个脚本中完成
+-- KEYS[1]为死信队列，KEYS[2]为订单消息队列，ARGV[1]为死信消息id，之后为订单消息的字段和值
+-- 死信消息已被其他请求重新投递时返回nil
+if (redis.call('xdel', KEYS[1], ARGV[1]) == 0) then
+    return nil
+end
+return redis.call('xadd', KEYS[2], '*', unpack(ARGV, 2))
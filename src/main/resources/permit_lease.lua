@@ -0,0 +1,12 @@
+-- 从全局许可计数中租用一批许可，KEYS[1]为许可key，ARGV[1]为租用数量
+-- 许可key不存在返回-1，表示该优惠券不启用本地准入
+local permits = tonumber(redis.call('get', KEYS[1]))
+if (permits == nil) then
+    return -1
+end
+local leased = math.min(permits, tonumber(ARGV[1]))
+if (leased <= 0) then
+    return 0
+end
+redis.call('decrby', KEYS[1], leased)
+return leased
\ No newline at end of file
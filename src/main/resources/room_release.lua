@@ -0,0 +1,12 @@
+-- 放行一批排队用户，KEYS[1]为排队队列，KEYS[2]为已放行集合，ARGV[1]为本批放行人数，ARGV[2]为已放行集合的过期时间（毫秒）
+local popped = redis.call('zpopmin', KEYS[1], ARGV[1])
+local released = 0
+for i = 1, #popped, 2 do
+    redis.call('sadd', KEYS[2], popped[i])
+    released = released + 1
+end
+-- 排队队列放空后会被删除，过期时间由调用方计算，不依赖排队队列的剩余时间
+if (released > 0) then
+    redis.call('pexpire', KEYS[2], ARGV[2])
+end
+return released
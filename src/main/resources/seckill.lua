@@ -4,29 +4,127 @@ local voucherId = ARGV[1]
 local userId = ARGV[2]
 -- 订单id
 local orderId = ARGV[3]
+-- 当前时间（毫秒）
+local now = tonumber(ARGV[4])
+-- bitmap记录的最大用户id，0表示不使用bitmap
+local bitmapMaxUserId = tonumber(ARGV[5])
+-- 购买记录在秒杀结束后的保留时间（毫秒）
+local orderRetainMillis = tonumber(ARGV[6])
+-- 订单状态记录的保留时间（毫秒）
+local orderStatusTtlMillis = tonumber(ARGV[7])
+-- 是否发送到stream消息队列，local模式下由应用写入本地队列
+local useStream = ARGV[8] == '1'
 
--- 优惠券key
-local stockKey = 'seckill:stock:' .. voucherId
--- 订单key
-local orderKey = 'seckill:order:' .. voucherId
+-- 脚本访问的key全部由调用方通过KEYS传入
+-- 秒杀券信息key：库存、开始时间、结束时间
+local voucherKey = KEYS[1]
+-- 订单key，bitmap模式下只保存超出bitmap范围的用户和迁移前的历史数据
+local orderKey = KEYS[2]
+-- 订单bitmap key，以用户id为偏移量
+local orderBitmapKey = KEYS[3]
+-- 订单状态key
+local orderStatusKey = KEYS[4]
+-- 令牌桶key：优惠券级别和用户级别
+local bucketKey = KEYS[5]
+local userBucketKey = KEYS[6]
+-- 订单消息队列stream
+local streamKey = KEYS[7]
+
+-- 计算令牌桶补充后的令牌数，桶状态为 tokens 剩余令牌、ts 上次补充时间
+local function refill(key, rate, burst)
+    local bucket = redis.call('hmget', key, 'tokens', 'ts')
+    local tokens = tonumber(bucket[1]) or burst
+    local ts = tonumber(bucket[2]) or now
+    local elapsed = math.max(now - ts, 0)
+    return math.min(burst, tokens + elapsed * rate / 1000)
+end
+
+-- 扣除一个令牌，令牌桶补满后过期，之后按满桶处理
+local function consume(key, tokens, rate, burst)
+    redis.call('hset', key, 'tokens', tokens - 1, 'ts', now)
+    redis.call('pexpire', key, math.ceil((burst - tokens + 1) * 1000 / rate) + 1000)
+end
+
+-- 读取预热的秒杀券信息，未预热返回5；令牌桶配置可选，排队室的放行校验在执行脚本前完成
+local voucher = redis.call('hmget', voucherKey, 'stock', 'begin', 'end', 'rate', 'burst', 'urate', 'uburst')
+if (not voucher[1] or not voucher[2] or not voucher[3]) then
+    return 5
+end
+
+-- 判断秒杀时间窗口，0表示不限制
+local beginTime = tonumber(voucher[2])
+local endTime = tonumber(voucher[3])
+if (beginTime > 0 and now < beginTime) then
+    return 3
+end
+if (endTime > 0 and now > endTime) then
+    return 4
+end
+
+-- 令牌桶限流，被拒绝的请求不扣库存、不记录购买、不发送消息，返回6
+local rate = tonumber(voucher[4]) or 0
+local burst = tonumber(voucher[5]) or 0
+local userRate = tonumber(voucher[6]) or 0
+local userBurst = tonumber(voucher[7]) or 0
+local tokens, userTokens
+if (rate > 0) then
+    tokens = refill(bucketKey, rate, burst)
+    if (tokens < 1) then
+        return 6
+    end
+end
+if (userRate > 0) then
+    userTokens = refill(userBucketKey, userRate, userBurst)
+    if (userTokens < 1) then
+        return 6
+    end
+end
+-- 两级都通过后再扣除令牌，避免用户级拒绝时消耗优惠券级令牌
+if (rate > 0) then
+    consume(bucketKey, tokens, rate, burst)
+end
+if (userRate > 0) then
+    consume(userBucketKey, userTokens, userRate, userBurst)
+end
 
 -- 判断库存是否充足
-if (tonumber(redis.call('get', stockKey)) <= 0) then
+if (tonumber(voucher[1]) <= 0) then
     return 1
 end
 
--- 判断用户是否下单
+-- 判断用户是否下单，bitmap模式下同时检查尚未迁移的set
+local uid = tonumber(userId)
+local useBitmap = bitmapMaxUserId > 0 and uid <= bitmapMaxUserId
+if (useBitmap and redis.call('getbit', orderBitmapKey, uid) == 1) then
+    return 2
+end
 if (redis.call('sismember', orderKey, userId) == 1) then
     return 2
 end
 
 -- 扣减库存
-redis.call('incrby', stockKey, -1)
+redis.call('hincrby', voucherKey, 'stock', -1)
 
--- 将userId存入当前优惠券的set集合
-redis.call('sadd', orderKey, userId)
+-- 记录用户已下单，超出bitmap范围的用户id仍存入set集合
+local recordKey = orderKey
+if (useBitmap) then
+    recordKey = orderBitmapKey
+    redis.call('setbit', orderBitmapKey, uid, 1)
+else
+    redis.call('sadd', orderKey, userId)
+end
+-- 秒杀结束后购买记录不再需要，设置过期时间
+if (endTime > 0) then
+    redis.call('pexpireat', recordKey, endTime + orderRetainMillis)
+end
 
 -- 发送消息到消息队列
-redis.call('xadd', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+if (useStream) then
+    redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+end
+
+-- 记录订单状态为排队中，落库后由消费者更新
+redis.call('hset', orderStatusKey, 'status', 'QUEUED', 'voucherId', voucherId)
+redis.call('pexpire', orderStatusKey, orderStatusTtlMillis)
 
 return 0
\ No newline at end of file
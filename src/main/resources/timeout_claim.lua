@@ -0,0 +1,12 @@
+-- 租用一批到期的超时订单，KEYS[1]为超时订单ZSET，ARGV[1]为到期判断的时间，ARGV[2]为租约到期时间，ARGV[3..]为订单id
+-- 只有分数不晚于ARGV[1]的订单才能被租用，租用后分数改为租约到期时间，其他节点无法再租用；
+-- 处理完成后由调用方删除，处理中宕机的订单在租约到期后由扫描重新接管
+local claimed = {}
+for i = 3, #ARGV do
+    local score = redis.call('zscore', KEYS[1], ARGV[i])
+    if (score and tonumber(score) <= tonumber(ARGV[1])) then
+        redis.call('zadd', KEYS[1], ARGV[2], ARGV[i])
+        claimed[#claimed + 1] = ARGV[i]
+    end
+end
+return claimed
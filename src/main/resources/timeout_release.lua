@@ -0,0 +1,13 @@
+-- 归还已取消订单的Redis库存，KEYS[1]为超时订单ZSET，KEYS[2]为秒杀券信息，KEYS[3]为许可计数，ARGV为订单id
+-- 只归还仍在ZSET中的订单，删除和归还在同一个脚本中完成，重复执行不会多归还
+local released = 0
+for i = 1, #ARGV do
+    released = released + redis.call('zrem', KEYS[1], ARGV[i])
+end
+if (released > 0) then
+    redis.call('hincrby', KEYS[2], 'stock', released)
+    if (redis.call('exists', KEYS[3]) == 1) then
+        redis.call('incrby', KEYS[3], released)
+    end
+end
+return released
@@ -0,0 +1,138 @@
+package com.hmdp;
+
+import cn.hutool.json.JSONUtil;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.TypeReference;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodecs;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存编码基准测试
+ * 对比原来的JSON字符串（hutool写入、逻辑过期用fastjson读取）与编码层的json和binary编码器，
+ * 数据为逻辑过期包装的商铺和商铺类型列表，启动时打印各编码的字节数
+ * 运行：mvn test-compile exec:java -Dexec.mainClass=com.hmdp.CacheCodecBenchmark -Dexec.classpathScope=test
+ * @author chenshanquan
+ * @date 2025/10/10
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    private static final Type SHOP_TYPE = new TypeReference<RedisData<Shop>>() {
+    }.getType();
+    private static final Type SHOP_TYPE_LIST_TYPE = new TypeReference<List<ShopType>>() {
+    }.getType();
+
+    @Param({"binary", "json"})
+    private String codec;
+
+    private CacheCodecs cacheCodecs;
+    private RedisData<Shop> shop;
+    private List<ShopType> shopTypes;
+
+    private String shopJson;
+    private String shopTypesJson;
+    private byte[] shopBytes;
+    private byte[] shopTypesBytes;
+
+    @Setup
+    public void setup() {
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.setCodec(codec);
+        JsonCacheCodec jsonCacheCodec = new JsonCacheCodec();
+        cacheCodecs = new CacheCodecs(Arrays.asList(jsonCacheCodec, new BinaryCacheCodec()), jsonCacheCodec,
+                cacheProperties);
+        cacheCodecs.init();
+
+        LocalDateTime now = LocalDateTime.now();
+        shop = new RedisData<>(now.plusMinutes(30), new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(120.149192).setY(30.316078).setAvgPrice(80L)
+                .setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+                .setCreateTime(now).setUpdateTime(now));
+        shopTypes = new ArrayList<>();
+        String[] names = {"美食", "KTV", "丽人·美发", "健身运动", "按摩·足疗", "美容SPA", "亲子游乐", "酒吧", "轰趴馆", "美睫·美甲"};
+        for (int i = 0; i < names.length; i++) {
+            shopTypes.add(new ShopType().setId(i + 1L).setName(names[i]).setIcon("/types/" + (i + 1) + ".png")
+                    .setSort(i + 1).setCreateTime(now).setUpdateTime(now));
+        }
+
+        shopJson = JSONUtil.toJsonStr(shop);
+        shopTypesJson = JSONUtil.toJsonStr(shopTypes);
+        shopBytes = cacheCodecs.encode(shop);
+        shopTypesBytes = cacheCodecs.encode(shopTypes);
+        System.out.printf("%n[%s] 商铺: 原JSON %d 字节，编码后 %d 字节；商铺类型列表: 原JSON %d 字节，编码后 %d 字节%n", codec,
+                shopJson.getBytes(StandardCharsets.UTF_8).length, shopBytes.length,
+                shopTypesJson.getBytes(StandardCharsets.UTF_8).length, shopTypesBytes.length);
+    }
+
+    @Benchmark
+    public String legacyEncodeShop() {
+        return JSONUtil.toJsonStr(shop);
+    }
+
+    @Benchmark
+    public Object legacyDecodeShop() {
+        return JSON.parseObject(shopJson, SHOP_TYPE);
+    }
+
+    @Benchmark
+    public Object legacyDecodeShopTypes() {
+        return JSONUtil.toBean(shopTypesJson, SHOP_TYPE_LIST_TYPE, false);
+    }
+
+    @Benchmark
+    public byte[] encodeShop() {
+        return cacheCodecs.encode(shop);
+    }
+
+    @Benchmark
+    public Object decodeShop() {
+        return cacheCodecs.decode(shopBytes, SHOP_TYPE);
+    }
+
+    @Benchmark
+    public byte[] encodeShopTypes() {
+        return cacheCodecs.encode(shopTypes);
+    }
+
+    @Benchmark
+    public Object decodeShopTypes() {
+        return cacheCodecs.decode(shopTypesBytes, SHOP_TYPE_LIST_TYPE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CacheCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,171 @@
+package com.hmdp;
+
+import com.alibaba.fastjson.TypeReference;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.entity.Voucher;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodecs;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 缓存编码层的单元测试：已登记类型的二进制往返、空字段和负数、压缩、JSON兜底以及没有格式头的旧数据，默认随mvn test运行
+ * @author chenshanquan
+ * @date 2025/10/10
+ **/
+public class CacheCodecsTests {
+
+    // 格式头：魔数(1) + 编码器标识(1) + 标志位(1)
+    private static final int CODEC_INDEX = 1;
+    private static final int FLAGS_INDEX = 2;
+    private static final int COMPRESS_THRESHOLD = 128;
+    // 时间按毫秒存储，测试数据不带更高精度
+    private static final LocalDateTime TIME = LocalDateTime.of(2025, 10, 10, 12, 30, 15, 123_000_000);
+
+    private static final Type SHOP_TYPE = new TypeReference<RedisData<Shop>>() {
+    }.getType();
+    private static final Type SHOP_TYPE_LIST_TYPE = new TypeReference<List<ShopType>>() {
+    }.getType();
+
+    private CacheCodecs cacheCodecs;
+
+    @Before
+    public void setUp() {
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.setCodec("binary");
+        cacheProperties.setCompressThreshold(COMPRESS_THRESHOLD);
+        JsonCacheCodec jsonCacheCodec = new JsonCacheCodec();
+        cacheCodecs = new CacheCodecs(Arrays.asList(jsonCacheCodec, new BinaryCacheCodec()), jsonCacheCodec,
+                cacheProperties);
+        cacheCodecs.init();
+    }
+
+    @Test
+    public void shopRoundTrip() {
+        Shop shop = new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L).setImages("/shops/1.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(-120.149192).setY(-30.316078)
+                .setAvgPrice(-80L).setSold(Integer.MAX_VALUE).setComments(0).setScore(Integer.MIN_VALUE)
+                .setOpenHours("10:00-22:00").setCreateTime(TIME).setUpdateTime(TIME.minusYears(60));
+        assertBinaryRoundTrip(shop);
+        assertBinaryRoundTrip(new Shop().setId(2L));
+    }
+
+    @Test
+    public void shopTypeRoundTrip() {
+        assertBinaryRoundTrip(new ShopType().setId(1L).setName("美食").setIcon("/types/ms.png").setSort(-1)
+                .setCreateTime(TIME).setUpdateTime(TIME));
+        assertBinaryRoundTrip(new ShopType().setId(2L).setName(""));
+    }
+
+    @Test
+    public void blogRoundTrip() {
+        assertBinaryRoundTrip(new Blog().setId(Long.MAX_VALUE).setShopId(1L).setUserId(Long.MIN_VALUE)
+                .setTitle("无尽浪漫的夜晚").setImages("/imgs/blogs/1.jpg,/imgs/blogs/2.jpg").setContent("内容\n第二行")
+                .setLiked(-3).setComments(7).setCreateTime(TIME).setUpdateTime(TIME));
+        assertBinaryRoundTrip(new Blog().setId(1L));
+    }
+
+    @Test
+    public void userRoundTrip() {
+        UserDTO user = new UserDTO();
+        user.setId(-1L);
+        user.setNickName("可可今天不吃肉");
+        user.setIcon("/imgs/icons/kkjtbcr.jpg");
+        assertBinaryRoundTrip(user);
+        assertBinaryRoundTrip(new UserDTO());
+    }
+
+    @Test
+    public void voucherRoundTrip() {
+        assertBinaryRoundTrip(new Voucher().setId(1L).setShopId(1L).setTitle("100元代金券").setSubTitle("周一至周日均可使用")
+                .setRules("全场通用").setPayValue(4750L).setActualValue(-10000L).setType(1).setStatus(1)
+                .setStock(0).setBeginTime(TIME).setEndTime(TIME.plusDays(1)).setCreateTime(TIME)
+                .setUpdateTime(TIME));
+        assertBinaryRoundTrip(new Voucher().setId(2L));
+    }
+
+    @Test
+    public void nestedValuesRoundTrip() {
+        List<Object> shopTypes = new ArrayList<>();
+        shopTypes.add(new ShopType().setId(1L).setName("美食"));
+        shopTypes.add(null);
+        assertBinaryRoundTrip(shopTypes);
+        assertBinaryRoundTrip(Collections.emptyList());
+        assertBinaryRoundTrip(new RedisData<>(TIME, new Shop().setId(1L).setName("103茶餐厅")));
+        assertBinaryRoundTrip(new RedisData<>(null, null));
+        assertBinaryRoundTrip(null);
+    }
+
+    @Test
+    public void largeValueIsCompressed() {
+        List<ShopType> shopTypes = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            shopTypes.add(new ShopType().setId(i + 1L).setName("美食").setIcon("/types/ms.png").setSort(i)
+                    .setCreateTime(TIME).setUpdateTime(TIME));
+        }
+        byte[] bytes = cacheCodecs.encode(shopTypes);
+        assertEquals(1, bytes[FLAGS_INDEX]);
+        assertEquals(shopTypes, cacheCodecs.decode(bytes, SHOP_TYPE_LIST_TYPE));
+
+        byte[] small = cacheCodecs.encode(Collections.singletonList(shopTypes.get(0)));
+        assertEquals(0, small[FLAGS_INDEX]);
+    }
+
+    @Test
+    public void unregisteredTypeFallsBackToJson() {
+        Map<String, Integer> value = new HashMap<>();
+        value.put("count", -1);
+        byte[] bytes = cacheCodecs.encode(value);
+        assertEquals(JsonCacheCodec.ID, bytes[CODEC_INDEX]);
+        assertEquals(value, cacheCodecs.decode(bytes, new TypeReference<Map<String, Integer>>() {
+        }.getType()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void legacyJsonWithoutHeaderDecodes() {
+        String shopJson = "{\"expireTime\":1760070615123,\"data\":{\"id\":1,\"name\":\"103茶餐厅\",\"typeId\":1,"
+                + "\"x\":120.149192,\"y\":30.316078,\"avgPrice\":80,\"sold\":4215,\"score\":37}}";
+        RedisData<Shop> redisData = (RedisData<Shop>) cacheCodecs.decode(shopJson.getBytes(StandardCharsets.UTF_8),
+                SHOP_TYPE);
+        assertNotNull(redisData.getExpireTime());
+        Shop shop = redisData.getData();
+        assertEquals(Long.valueOf(1), shop.getId());
+        assertEquals("103茶餐厅", shop.getName());
+        assertEquals(Double.valueOf(120.149192), shop.getX());
+        assertEquals(Integer.valueOf(4215), shop.getSold());
+        assertNull(shop.getComments());
+
+        String shopTypesJson = "[{\"id\":1,\"name\":\"美食\",\"icon\":\"/types/ms.png\",\"sort\":1}]";
+        List<ShopType> shopTypes = (List<ShopType>) cacheCodecs.decode(
+                shopTypesJson.getBytes(StandardCharsets.UTF_8), SHOP_TYPE_LIST_TYPE);
+        assertEquals(Collections.singletonList(new ShopType().setId(1L).setName("美食").setIcon("/types/ms.png")
+                .setSort(1)), shopTypes);
+    }
+
+    private void assertBinaryRoundTrip(Object value) {
+        byte[] bytes = cacheCodecs.encode(value);
+        assertEquals(BinaryCacheCodec.ID, bytes[CODEC_INDEX]);
+        assertEquals(value, cacheCodecs.decode(bytes, Object.class));
+    }
+}
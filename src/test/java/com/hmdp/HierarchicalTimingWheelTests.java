@@ -0,0 +1,116 @@
+package com.hmdp;
+
+import com.hmdp.utils.HierarchicalTimingWheel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 分层时间轮的单元测试，槽时长10ms、每层4个槽，第一层覆盖40ms、第二层160ms、第三层640ms，默认随mvn test运行
+ * @author chenshanquan
+ * @date 2025/10/4
+ **/
+public class HierarchicalTimingWheelTests {
+
+    private static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SIZE = 4;
+    private static final long WAIT_MILLIS = 3000;
+
+    private long start;
+    private HierarchicalTimingWheel<String> timingWheel;
+
+    @Before
+    public void setUp() {
+        start = System.currentTimeMillis();
+        timingWheel = new HierarchicalTimingWheel<>(TICK_MILLIS, WHEEL_SIZE, start);
+    }
+
+    @Test
+    public void dueTaskIsRejected() {
+        assertFalse(timingWheel.add("past", start - 1000));
+        assertFalse(timingWheel.add("now", start - start % TICK_MILLIS));
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void taskInFirstWheelExpires() throws InterruptedException {
+        long expiration = start + 25;
+        assertTrue(timingWheel.add("first", expiration));
+        assertEquals(1, timingWheel.size());
+        Map<String, Long> fired = drain(1);
+        assertEquals(1, fired.size());
+        // 槽按tick对齐，最多提前一个tick到期
+        assertTrue(fired.get("first") >= expiration - TICK_MILLIS);
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void overflowTasksCascadeDownInOrder() throws InterruptedException {
+        Map<String, Long> expirations = new HashMap<>();
+        // 分别落在第一、二、三层时间轮
+        expirations.put("level1", start + 25);
+        expirations.put("level2", start + 120);
+        expirations.put("level3", start + 400);
+        for (Map.Entry<String, Long> entry : expirations.entrySet()) {
+            assertTrue(timingWheel.add(entry.getKey(), entry.getValue()));
+        }
+        assertEquals(3, timingWheel.size());
+
+        List<String> order = new ArrayList<>();
+        Map<String, Long> fired = drain(3, order);
+        assertEquals(Arrays.asList("level1", "level2", "level3"), order);
+        for (Map.Entry<String, Long> entry : expirations.entrySet()) {
+            assertTrue(entry.getKey() + " 提前到期", fired.get(entry.getKey()) >= entry.getValue() - TICK_MILLIS);
+        }
+        assertEquals(0, timingWheel.size());
+    }
+
+    @Test
+    public void tasksInSameBucketExpireTogether() throws InterruptedException {
+        assertTrue(timingWheel.add("a", start + 200));
+        assertTrue(timingWheel.add("b", start + 201));
+        assertTrue(timingWheel.add("c", start + 60));
+        Map<String, Long> fired = drain(3);
+        assertEquals(3, fired.size());
+        assertTrue(fired.get("c") <= fired.get("a"));
+        assertTrue(fired.get("a") >= start + 200 - TICK_MILLIS);
+        assertTrue(fired.get("b") >= start + 201 - TICK_MILLIS);
+    }
+
+    @Test
+    public void taskAddedAfterClockAdvancedUsesCurrentTime() throws InterruptedException {
+        assertTrue(timingWheel.add("first", start + 50));
+        drain(1);
+        // 时钟推进后，早于当前槽的任务视为已到期
+        assertFalse(timingWheel.add("late", start + 20));
+        long now = System.currentTimeMillis();
+        assertTrue(timingWheel.add("next", now + 300));
+        Map<String, Long> fired = drain(1);
+        assertTrue(fired.get("next") >= now + 300 - TICK_MILLIS);
+    }
+
+    private Map<String, Long> drain(int count) throws InterruptedException {
+        return drain(count, new ArrayList<>());
+    }
+
+    private Map<String, Long> drain(int count, List<String> order) throws InterruptedException {
+        Map<String, Long> fired = new HashMap<>();
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (fired.size() < count && System.currentTimeMillis() < deadline) {
+            timingWheel.advance(TICK_MILLIS, item -> {
+                fired.put(item, System.currentTimeMillis());
+                order.add(item);
+            });
+        }
+        return fired;
+    }
+}
@@ -0,0 +1,195 @@
+package com.hmdp;
+
+import cn.hutool.core.io.FileUtil;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mq.LocalOrderQueue;
+import com.hmdp.mq.OrderStatusTracker;
+import com.hmdp.mq.OrderTimeoutScheduler;
+import com.hmdp.mq.VoucherOrderBatchWriter;
+import com.hmdp.service.IVoucherService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 本地订单队列预写日志的单元测试：每个日志段只能容纳4条记录，覆盖检查点、日志段切换、残缺记录和重启重放，
+ * 落库使用mock代替，默认随mvn test运行
+ * @author chenshanquan
+ * @date 2025/10/5
+ **/
+public class LocalOrderQueueTests {
+
+    private static final int RECORD_BYTES = 32;
+    private static final int RECORDS_PER_SEGMENT = 4;
+    private static final long VOUCHER_ID = 1L;
+    private static final long WAIT_MILLIS = 5000;
+
+    private File walDir;
+    private SeckillProperties seckillProperties;
+    // 所有写入成功的订单id，按落库顺序
+    private final List<Long> persisted = Collections.synchronizedList(new ArrayList<>());
+    // 为true时落库失败，检查点不会推进，模拟落库前宕机
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final AtomicBoolean attempted = new AtomicBoolean();
+    private final List<LocalOrderQueue> queues = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        walDir = Files.createTempDirectory("wal").toFile();
+        seckillProperties = new SeckillProperties();
+        seckillProperties.setWalDir(walDir.getAbsolutePath());
+        seckillProperties.setWalSegmentBytes(RECORD_BYTES * RECORDS_PER_SEGMENT);
+        seckillProperties.setRingBufferSize(16);
+        // 失败时不进入逐个落库，订单一直留在日志中
+        seckillProperties.setMaxRetries(Integer.MAX_VALUE);
+        seckillProperties.setRetryBaseMillis(10);
+        seckillProperties.setRetryMaxMillis(10);
+    }
+
+    @After
+    public void tearDown() {
+        queues.forEach(LocalOrderQueue::destroy);
+        FileUtil.del(walDir);
+    }
+
+    @Test
+    public void replayUnconfirmedOrdersExactlyOnce() throws Exception {
+        LocalOrderQueue queue = open();
+        offer(queue, 1, 5);
+        await(() -> persisted.size() == 5);
+        // 第5条在第二个日志段，检查点推进后第一个日志段被删除
+        await(() -> !segment(0).exists());
+
+        attempted.set(false);
+        failing.set(true);
+        offer(queue, 6, 10);
+        await(attempted::get);
+        crash(queue);
+        assertTrue(segment(2).exists());
+
+        failing.set(false);
+        persisted.clear();
+        open();
+        await(() -> persisted.size() == 5);
+        assertEquals(Arrays.asList(6L, 7L, 8L, 9L, 10L), new ArrayList<>(persisted));
+        await(() -> !segment(1).exists());
+
+        // 重放完成后检查点已推进到最后一条记录，再次重启不会重复落库
+        persisted.clear();
+        LocalOrderQueue reopened = open();
+        offer(reopened, 11, 11);
+        await(() -> persisted.size() == 1);
+        assertEquals(Collections.singletonList(11L), new ArrayList<>(persisted));
+    }
+
+    @Test
+    public void tornRecordIsDiscardedOnRecovery() throws Exception {
+        failing.set(true);
+        LocalOrderQueue queue = open();
+        offer(queue, 1, 3);
+        await(attempted::get);
+        crash(queue);
+        // 第3条记录的用户id被破坏，crc校验失败
+        try (RandomAccessFile raf = new RandomAccessFile(segment(0), "rw")) {
+            raf.seek(2 * RECORD_BYTES + 12);
+            raf.writeLong(-1L);
+        }
+
+        failing.set(false);
+        LocalOrderQueue recovered = open();
+        await(() -> persisted.size() == 2);
+        // 新订单从最后一条完整记录之后追加，覆盖残缺记录
+        offer(recovered, 4, 4);
+        await(() -> persisted.size() == 3);
+        assertEquals(Arrays.asList(1L, 2L, 4L), new ArrayList<>(persisted));
+        crash(recovered);
+
+        persisted.clear();
+        open();
+        Thread.sleep(200);
+        assertTrue(persisted.isEmpty());
+    }
+
+    @Test
+    public void offerFailsWhenRingBufferIsFull() throws Exception {
+        failing.set(true);
+        LocalOrderQueue queue = open();
+        int accepted = 0;
+        for (long orderId = 1; orderId <= 32; orderId++) {
+            if (queue.offer(order(orderId))) {
+                accepted++;
+            }
+        }
+        assertEquals(seckillProperties.getRingBufferSize(), accepted);
+        assertFalse(queue.offer(order(33)));
+    }
+
+    private LocalOrderQueue open() throws Exception {
+        VoucherOrderBatchWriter writer = mock(VoucherOrderBatchWriter.class);
+        when(writer.write(anyList())).thenAnswer(invocation -> {
+            attempted.set(true);
+            if (failing.get()) {
+                throw new IllegalStateException("数据库不可用");
+            }
+            List<VoucherOrder> voucherOrders = invocation.getArgument(0);
+            List<Long> ids = voucherOrders.stream().map(VoucherOrder::getId).collect(Collectors.toList());
+            persisted.addAll(ids);
+            return new HashSet<>(ids);
+        });
+        LocalOrderQueue queue = new LocalOrderQueue(writer, mock(OrderStatusTracker.class),
+                mock(OrderTimeoutScheduler.class), mock(IVoucherService.class), seckillProperties);
+        queue.init();
+        queues.add(queue);
+        attempted.set(false);
+        return queue;
+    }
+
+    private void crash(LocalOrderQueue queue) throws InterruptedException {
+        queue.destroy();
+        queues.remove(queue);
+        // 等待消费线程退出
+        Thread.sleep(100);
+    }
+
+    private void offer(LocalOrderQueue queue, long fromId, long toId) {
+        for (long orderId = fromId; orderId <= toId; orderId++) {
+            assertTrue(queue.offer(order(orderId)));
+        }
+    }
+
+    private VoucherOrder order(long orderId) {
+        return new VoucherOrder().setId(orderId).setUserId(-orderId).setVoucherId(VOUCHER_ID);
+    }
+
+    private File segment(long seq) {
+        return new File(walDir, "wal-" + seq + ".log");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("等待超时", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
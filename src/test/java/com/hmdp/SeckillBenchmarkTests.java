@@ -0,0 +1,211 @@
+package com.hmdp;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Voucher;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.annotation.IfProfileValue;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 秒杀压测与超卖校验
+ * 使用本地Redis和H2内存数据库，并发调用秒杀接口，统计准入吞吐、延迟分位和订单全部落库的耗时，
+ * 最后核对Redis库存、数据库库存和订单数，确认没有超卖和重复下单
+ * 需要本地Redis 6.2以上（127.0.0.1:6379，使用15号库，XTRIM MINID需要6.2），默认跳过，运行：
+ * docker run -d --name hmdp-bench-redis -p 6379:6379 redis:7
+ * mvn test -Dtest=SeckillBenchmarkTests -Dseckill.bench=true
+ * 可调参数：-Dseckill.bench.users -Dseckill.bench.vouchers -Dseckill.bench.stock -Dseckill.bench.threads
+ * @author chenshanquan
+ * @date 2025/9/29
+ **/
+@Slf4j
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = HmDianPingApplication.class)
+@ActiveProfiles("bench")
+@IfProfileValue(name = "seckill.bench", value = "true")
+public class SeckillBenchmarkTests {
+
+    private static final int USERS = Integer.getInteger("seckill.bench.users", 5000);
+    private static final int VOUCHERS = Integer.getInteger("seckill.bench.vouchers", 2);
+    private static final int STOCK = Integer.getInteger("seckill.bench.stock", 1000);
+    private static final int THREADS = Integer.getInteger("seckill.bench.threads", 64);
+    // 等待订单全部落库的超时时间
+    private static final long PERSIST_TIMEOUT_MILLIS = 120_000;
+
+    @Autowired
+    private IVoucherOrderService voucherOrderService;
+    @Autowired
+    private IVoucherService voucherService;
+    @Autowired
+    private ISeckillVoucherService seckillVoucherService;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private SeckillProperties seckillProperties;
+
+    /**
+     * 清理上一次压测留下的秒杀库存、购买记录、订单消息队列和死信队列，压测使用独占的Redis库
+     * H2中的优惠券id每次从1开始，遗留的订单消息会被当作本次压测的订单落库，删除stream后重新创建消费组
+     */
+    @Before
+    public void cleanRedis() {
+        List<String> keys = new ArrayList<>();
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            try (Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().match("seckill:*").count(1000).build())) {
+                cursor.forEachRemaining(key -> keys.add(new String(key, StandardCharsets.UTF_8)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+        keys.add(seckillProperties.getStreamName());
+        keys.add(seckillProperties.getDeadLetterStreamName());
+        stringRedisTemplate.delete(keys);
+        stringRedisTemplate.opsForStream().createGroup(seckillProperties.getStreamName(), ReadOffset.latest(),
+                seckillProperties.getGroupName());
+    }
+
+    @Test
+    public void seckillBenchmark() throws InterruptedException {
+        Long[] voucherIds = new Long[VOUCHERS];
+        for (int i = 0; i < VOUCHERS; i++) {
+            voucherIds[i] = createSeckillVoucher(i);
+        }
+
+        // 每个用户对每张券各抢一次，请求总数 = 用户数 * 券数
+        int total = USERS * VOUCHERS;
+        long[] latencies = new long[total];
+        AtomicInteger cursor = new AtomicInteger();
+        AtomicIntegerArray successes = new AtomicIntegerArray(VOUCHERS);
+        CountDownLatch latch = new CountDownLatch(THREADS);
+        ExecutorService es = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            es.submit(() -> {
+                try {
+                    int i;
+                    while ((i = cursor.getAndIncrement()) < total) {
+                        int voucherIndex = i % VOUCHERS;
+                        UserDTO user = new UserDTO();
+                        user.setId((long) (i / VOUCHERS + 1));
+                        UserHolder.saveUser(user);
+                        long begin = System.nanoTime();
+                        Result result = voucherOrderService.seckillVoucher(voucherIds[voucherIndex]);
+                        latencies[i] = System.nanoTime() - begin;
+                        if (Boolean.TRUE.equals(result.getSuccess())) {
+                            successes.incrementAndGet(voucherIndex);
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("秒杀请求异常，{}", e.getMessage());
+                } finally {
+                    UserHolder.removeUser();
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+        long admitNanos = System.nanoTime() - start;
+        es.shutdown();
+
+        int admitted = 0;
+        for (int i = 0; i < VOUCHERS; i++) {
+            admitted += successes.get(i);
+        }
+        // 等待所有抢购成功的订单落库
+        long persisted;
+        long deadline = System.currentTimeMillis() + PERSIST_TIMEOUT_MILLIS;
+        while ((persisted = countOrders(voucherIds)) < admitted && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        long persistNanos = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        log.info("秒杀压测完成，用户: {}，优惠券: {}，库存: {}，线程: {}", USERS, VOUCHERS, STOCK, THREADS);
+        log.info("请求数: {}，抢购成功: {}，准入吞吐: {} 次/秒", total, admitted,
+                String.format("%.0f", total / (admitNanos / 1e9)));
+        log.info("延迟 p50: {}ms，p99: {}ms，p999: {}ms，max: {}ms", millis(percentile(latencies, 0.50)),
+                millis(percentile(latencies, 0.99)), millis(percentile(latencies, 0.999)),
+                millis(latencies[total - 1]));
+        log.info("订单全部落库耗时: {}ms，已落库: {}", millis(persistNanos), persisted);
+
+        // 核对库存和订单数
+        assertEquals("存在未落库的订单", admitted, persisted);
+        for (int i = 0; i < VOUCHERS; i++) {
+            Long voucherId = voucherIds[i];
+            int sold = successes.get(i);
+            int redisStock = Integer.parseInt(String.valueOf(
+                    stringRedisTemplate.opsForHash().get(RedisConstants.SECKILL_VOUCHER_KEY + voucherId, "stock")));
+            int dbStock = seckillVoucherService.getById(voucherId).getStock();
+            int orders = voucherOrderService.query().eq("voucher_id", voucherId).count();
+            int buyers = voucherOrderService.query().select("distinct user_id").eq("voucher_id", voucherId).count();
+            log.info("优惠券: {}，抢购成功: {}，Redis库存: {}，数据库库存: {}，订单数: {}", voucherId, sold,
+                    redisStock, dbStock, orders);
+            assertTrue("超卖", orders <= STOCK);
+            assertEquals("Redis库存与抢购成功数不一致", STOCK - sold, redisStock);
+            assertEquals("数据库库存与订单数不一致", STOCK - orders, dbStock);
+            assertEquals("订单数与抢购成功数不一致", sold, orders);
+            assertEquals("存在重复下单", orders, buyers);
+        }
+    }
+
+    private Long createSeckillVoucher(int index) {
+        Voucher voucher = new Voucher();
+        voucher.setShopId(1L);
+        voucher.setTitle("压测秒杀券" + index);
+        voucher.setPayValue(100L);
+        voucher.setActualValue(1000L);
+        voucher.setType(1);
+        voucher.setStatus(1);
+        voucher.setStock(STOCK);
+        voucher.setBeginTime(LocalDateTime.now().minusMinutes(1));
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+        voucherService.addSeckillVoucher(voucher);
+        return voucher.getId();
+    }
+
+    private long countOrders(Long[] voucherIds) {
+        return voucherOrderService.query().in("voucher_id", Arrays.asList(voucherIds)).count();
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(Math.min(index, sorted.length - 1), 0)];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,89 @@
+package com.hmdp;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SoldOutRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 本地售罄标记的单元测试，Redis使用mock代替，默认随mvn test运行
+ * @author chenshanquan
+ * @date 2025/9/29
+ **/
+public class SoldOutRegistryTests {
+
+    private static final Long VOUCHER_ID = 1L;
+    private static final long RECHECK_MILLIS = 50;
+
+    private StringRedisTemplate stringRedisTemplate;
+    private SoldOutRegistry soldOutRegistry;
+
+    @Before
+    public void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        SeckillProperties seckillProperties = new SeckillProperties();
+        seckillProperties.setSoldOutRecheckMillis(RECHECK_MILLIS);
+        soldOutRegistry = new SoldOutRegistry(stringRedisTemplate, mock(RedisMessageListenerContainer.class),
+                seckillProperties);
+    }
+
+    @Test
+    public void markSoldOutPublishesOnce() {
+        assertFalse(soldOutRegistry.isSoldOut(VOUCHER_ID));
+        soldOutRegistry.markSoldOut(VOUCHER_ID);
+        soldOutRegistry.markSoldOut(VOUCHER_ID);
+        assertTrue(soldOutRegistry.isSoldOut(VOUCHER_ID));
+        verify(stringRedisTemplate, times(1)).convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, "1");
+    }
+
+    @Test
+    public void recheckLetsOneRequestThroughWithoutRepublishing() throws InterruptedException {
+        soldOutRegistry.markSoldOut(VOUCHER_ID);
+        Thread.sleep(RECHECK_MILLIS + 20);
+        // 复查窗口过后只放行一个请求
+        assertFalse(soldOutRegistry.isSoldOut(VOUCHER_ID));
+        assertTrue(soldOutRegistry.isSoldOut(VOUCHER_ID));
+        // 复查仍然售罄，只刷新本地标记
+        soldOutRegistry.markSoldOut(VOUCHER_ID);
+        assertTrue(soldOutRegistry.isSoldOut(VOUCHER_ID));
+        verify(stringRedisTemplate, times(1)).convertAndSend(anyString(), anyString());
+    }
+
+    @Test
+    public void recheckFindingStockClearsLocalMark() throws InterruptedException {
+        soldOutRegistry.markSoldOut(VOUCHER_ID);
+        Thread.sleep(RECHECK_MILLIS + 20);
+        assertFalse(soldOutRegistry.isSoldOut(VOUCHER_ID));
+        soldOutRegistry.markAvailable(VOUCHER_ID);
+        assertFalse(soldOutRegistry.isSoldOut(VOUCHER_ID));
+    }
+
+    @Test
+    public void restockMessageClearsMark() {
+        soldOutRegistry.onMessage(message(RedisConstants.SECKILL_SOLD_OUT_CHANNEL), null);
+        assertTrue(soldOutRegistry.isSoldOut(VOUCHER_ID));
+        soldOutRegistry.onMessage(message(RedisConstants.SECKILL_RESTOCK_CHANNEL), null);
+        assertFalse(soldOutRegistry.isSoldOut(VOUCHER_ID));
+    }
+
+    private static Message message(String channel) {
+        Message message = mock(Message.class);
+        when(message.getChannel()).thenReturn(channel.getBytes(StandardCharsets.UTF_8));
+        when(message.getBody()).thenReturn(VOUCHER_ID.toString().getBytes(StandardCharsets.UTF_8));
+        return message;
+    }
+}